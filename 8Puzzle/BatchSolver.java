@@ -0,0 +1,135 @@
+/* *****************************************************************************
+ *  Synopsis: solves a batch of independent boards in parallel. Every board is a
+ *            task on the given executor (a ForkJoinPool by default; any executor,
+ *            e.g. one with a thread per task, works as well) and is solved by IDA*
+ *            on a scratch search that is kept per thread, so that a solve allocates
+ *            almost nothing. Reports the number of moves and the time for every board
+ *            and the throughput of the whole batch.
+ *  Dependencies: -- Board.java
+ *                -- IDASolver.java
+ **************************************************************************** */
+
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+public class BatchSolver {
+
+    private static final ThreadLocal<IDASolver.Search> SCRATCH =
+            ThreadLocal.withInitial(IDASolver.Search::new);
+
+    private final int[] moves;
+    private final long[] nanos;
+    private final long elapsed;
+
+    // solve all boards on a ForkJoinPool with the given number of threads
+    public BatchSolver(Board[] boards, int parallelism) {
+        this(boards, new ForkJoinPool(parallelism), true);
+    }
+
+    // solve all boards on executor (which is left running)
+    public BatchSolver(Board[] boards, ExecutorService executor) {
+        this(boards, executor, false);
+    }
+
+    // solve all boards of the stream on executor (which is left running)
+    public BatchSolver(Stream<Board> boards, ExecutorService executor) {
+        this(boards.toArray(Board[]::new), executor, false);
+    }
+
+    private BatchSolver(Board[] boards, ExecutorService executor, boolean shutdown) {
+        if (boards == null) throw new IllegalArgumentException("No boards provided!");
+        if (executor == null) throw new IllegalArgumentException("No executor provided!");
+        for (Board b : boards) {
+            if (b == null) throw new IllegalArgumentException("No board may be null!");
+        }
+        moves = new int[boards.length];
+        nanos = new long[boards.length];
+
+        List<Callable<Void>> tasks = new ArrayList<>(boards.length);
+        for (int i = 0; i < boards.length; i++) {
+            int k = i;
+            tasks.add(() -> {
+                long start = System.nanoTime();
+                moves[k] = SCRATCH.get().solve(boards[k]);
+                nanos[k] = System.nanoTime() - start;
+                return null;
+            });
+        }
+
+        long start = System.nanoTime();
+        try {
+            for (Future<Void> f : executor.invokeAll(tasks)) f.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while solving!", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            if (shutdown) executor.shutdown();
+        }
+        elapsed = System.nanoTime() - start;
+    }
+
+    // number of boards in the batch
+    public int size() {
+        return moves.length;
+    }
+
+    // min number of moves to solve board i; -1 if unsolvable
+    public int moves(int i) {
+        return moves[i];
+    }
+
+    // time spent solving board i (in seconds)
+    public double time(int i) {
+        return nanos[i] / 1e9;
+    }
+
+    // wall-clock time of the whole batch (in seconds)
+    public double elapsedTime() {
+        return elapsed / 1e9;
+    }
+
+    // boards solved per second
+    public double throughput() {
+        return moves.length / elapsedTime();
+    }
+
+    // test client: solve random 4x4 boards with 1, 2, 4, ... threads
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int n = 4;
+        Board[] boards = new Board[count];
+        for (int i = 0; i < count; i++) {
+            int[][] tiles = new int[n][n];
+            for (int k = 0; k < n * n; k++) tiles[k / n][k % n] = (k + 1) % (n * n);
+            Board b = new Board(tiles);
+            for (int step = 0; step < 60; step++) {
+                List<Board> next = new ArrayList<>();
+                for (Board nb : b.neighbors()) next.add(nb);
+                b = next.get(StdRandom.uniformInt(next.size()));
+            }
+            boards[i] = b;
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int p = 1; p <= cores; p *= 2) {
+            BatchSolver batch = new BatchSolver(boards, p);
+            StdOut.printf("%2d threads: %.3fs, %.1f boards/s%n", p, batch.elapsedTime(),
+                          batch.throughput());
+        }
+    }
+}
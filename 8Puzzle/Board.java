@@ -1,7 +1,17 @@
 /* *****************************************************************************
  *  Synopsis: create an n-by-n board for the 8Puzzle (or nPuzzle), defines twin boards
  *            (differing only in one tile) and defines two distances measuring how far apart
- *            boards are (Manhattan and Hamming).
+ *            boards are (Manhattan and Hamming), refined by linear conflicts and the
+ *            walking distance.
+ *            Tiles are stored row-major in a single long (4 bits per tile) for n <= 4 and
+ *            in a flat char array otherwise. The blank position, the Hamming and the
+ *            Manhattan distance and (for n <= 4) the count matrices of the walking
+ *            distance are cached, so that the distances of a neighbor are derived
+ *            from its parent in constant time. For n <= 4 so is the neighbor itself;
+ *            larger boards are immutable arrays, so every neighbor copies its n^2
+ *            cells (only the cached values and the Zobrist hash are incremental).
+ *            Boards hash to a 64-bit key: the packed tiles themselves for n <= 4 and an
+ *            incrementally updated Zobrist hash otherwise.
  **************************************************************************** */
 
 import edu.princeton.cs.algs4.StdOut;
@@ -11,162 +21,320 @@ import java.util.Arrays;
 
 public class Board {
 
-    private final int[][] board;
+    // largest dimension whose tiles fit into the 4-bit nibbles of a long
+    private static final int PACKED_MAX = 4;
+
+    private final int n;
+    private final long packed;
+    private final char[] cells;
+    private final long zobrist;
+    private final int blank;
+    private final int hamming;
+    private final int manhattan;
+    private final long rowKey, colKey;
 
     // create a board from an n-by-n array of tiles,
     // where tiles[row][col] = tile at (row, col)
     public Board(int[][] tiles) {
-        int n = tiles.length;
-        this.board = new int[n][n];
+        n = tiles.length;
+        long p = 0L;
+        char[] c = n > PACKED_MAX ? new char[n * n] : null;
+        long zob = 0L;
+        int z = 0;
+        int count = 0;
+        int mDist = 0;
+        long rk = 0L, ck = 0L;
         for (int i = 0; i < n; i++) {
             for (int j = 0; j < n; j++) {
-                this.board[i][j] = tiles[i][j];
+                int k = i * n + j;
+                int tile = tiles[i][j];
+                if (c == null) p |= (long) tile << (k << 2);
+                else {
+                    c[k] = (char) tile;
+                    zob ^= zobrist(k, tile);
+                }
+                if (tile == 0) z = k;
+                count += misplaced(tile, k);
+                mDist += distance(tile, k);
+                if (tile != 0 && n <= WalkingDistance.MAX_DIMENSION) {
+                    rk += 1L << WalkingDistance.shift(n, i, (tile - 1) / n);
+                    ck += 1L << WalkingDistance.shift(n, j, (tile - 1) % n);
+                }
             }
         }
+        packed = p;
+        cells = c;
+        zobrist = zob;
+        blank = z;
+        hamming = count;
+        manhattan = mDist;
+        rowKey = rk;
+        colKey = ck;
+    }
+
+    // create a board directly from its encoding and cached values
+    private Board(int n, long packed, char[] cells, long zobrist, int blank, int hamming,
+                  int manhattan, long rowKey, long colKey) {
+        this.n = n;
+        this.packed = packed;
+        this.cells = cells;
+        this.zobrist = zobrist;
+        this.blank = blank;
+        this.hamming = hamming;
+        this.manhattan = manhattan;
+        this.rowKey = rowKey;
+        this.colKey = colKey;
     }
 
     // string representation of this board
     public String toString() {
-        int n = board.length;
-        String string = n + "\n";
+        StringBuilder s = new StringBuilder();
+        s.append(n).append("\n");
         for (int i = 0; i < n; i++) {
             for (int j = 0; j < n; j++) {
-                string = string + "  " + board[i][j];
-                if (j == n - 1) string = string + "\n";
+                s.append("  ").append(tileAt(i * n + j));
             }
+            s.append("\n");
         }
-        return string;
+        return s.toString();
     }
 
     // board dimension n
     public int dimension() {
-        return board.length;
+        return n;
     }
 
     // number of tiles out of place
     public int hamming() {
+        return hamming;
+    }
+
+    // sum of Manhattan distances between tiles and goal
+    public int manhattan() {
+        return manhattan;
+    }
+
+    // Manhattan distance plus 2 for every tile that has to leave its goal row (column) to
+    // let the other tiles of that row (column) pass
+    public int linearConflict() {
+        int conflicts = 0;
+        for (int line = 0; line < n; line++) {
+            conflicts += lineConflicts(true, line) + lineConflicts(false, line);
+        }
+        return manhattan + 2 * conflicts;
+    }
+
+    // least number of moves to the goal when a move only counts along rows, plus the same
+    // along columns (n <= 4)
+    public int walkingDistance() {
+        if (n > WalkingDistance.MAX_DIMENSION) {
+            throw new IllegalArgumentException("Walking distance needs n <= 4!");
+        }
+        return WalkingDistance.lookup(n, rowKey) + WalkingDistance.lookup(n, colKey);
+    }
+
+    // number of tiles that must leave row (or column) line so that the remaining tiles of
+    // that line with their goal in it are in goal order (length minus longest increasing run).
+    // The goals in a line are distinct, so the tails of the increasing runs (patience sorting)
+    // are kept as a bit set: a goal replaces the least tail above it. Lines longer than 64
+    // cells fall back to an array
+    int lineConflicts(boolean row, int line) {
+        if (n > Long.SIZE) return lineConflictsWide(row, line);
+        long tails = 0L;
         int count = 0;
-        int n = board.length;
         for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (board[i][j] != 0 && board[i][j] != i * n + j + 1) count++;
-            }
+            int tile = tileAt(row ? line * n + i : i * n + line);
+            if (tile == 0) continue;
+            int goalLine = row ? (tile - 1) / n : (tile - 1) % n;
+            if (goalLine != line) continue;
+            int goal = row ? (tile - 1) % n : (tile - 1) / n;
+            count++;
+            long above = tails & (-1L << goal);
+            tails = (tails ^ Long.lowestOneBit(above)) | 1L << goal;
         }
-        return count;
+        return count - Long.bitCount(tails);
     }
 
-    // sum of Manhattan distances between tiles and goal
-    public int manhattan() {
-        int mDist = 0;
-        int n = board.length;
+    // helper function for lineConflicts() on lines longer than 64 cells
+    private int lineConflictsWide(boolean row, int line) {
+        int[] tails = new int[n];
+        int count = 0;
+        int longest = 0;
         for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (board[i][j] != 0 && board[i][j] != i * n + j + 1) {
-                    mDist = mDist + Math.abs(i - (board[i][j] - 1) / n) + Math.abs(
-                            j - (board[i][j] - 1) % n);
-                }
-            }
+            int tile = tileAt(row ? line * n + i : i * n + line);
+            if (tile == 0) continue;
+            int goalLine = row ? (tile - 1) / n : (tile - 1) % n;
+            if (goalLine != line) continue;
+            int goal = row ? (tile - 1) % n : (tile - 1) / n;
+            count++;
+            int j = 0;
+            while (j < longest && tails[j] < goal) j++;
+            tails[j] = goal;
+            if (j == longest) longest++;
         }
-        return mDist;
+        return count - longest;
+    }
+
+    // count matrix of the walking distance: for every row (column), the number of its tiles
+    // per goal row (column), packed 3 bits per count (n <= 4)
+    long walkKey(boolean rows) {
+        return rows ? rowKey : colKey;
     }
 
     // is this board the goal board?
     public boolean isGoal() {
-        return this.hamming() == 0;
+        return hamming == 0;
     }
 
     // does this board equal y?
     public boolean equals(Object y) {
+        if (y == this) return true;
         if (y == null) return false;
         if (!this.getClass().equals(y.getClass())) return false;
-        else {
-            Board that = (Board) y;
-            if (this.dimension() != that.dimension()) return false;
-            int n = board.length;
-            int count = 0;
-            for (int i = 0; i < n; i++) {
-                for (int j = 0; j < n; j++) {
-                    if (this.board[i][j] == that.board[i][j]) count++;
-                }
-            }
-            return count == this.dimension() * this.dimension();
+        Board that = (Board) y;
+        if (this.n != that.n) return false;
+        if (n <= PACKED_MAX) return this.packed == that.packed;
+        return Arrays.equals(this.cells, that.cells);
+    }
+
+    // hash code consistent with equals
+    public int hashCode() {
+        return Long.hashCode(key());
+    }
+
+    // 64-bit key of this board: exact for n <= 4, a Zobrist hash otherwise
+    long key() {
+        return n <= PACKED_MAX ? packed : zobrist;
+    }
+
+    // tile in cell k (row-major)
+    int tileAt(int k) {
+        if (n <= PACKED_MAX) return (int) (packed >>> (k << 2)) & 0xF;
+        return cells[k];
+    }
+
+    // helper function that returns the (fixed, pseudo-random) Zobrist value of tile in cell k
+    private static long zobrist(int k, int tile) {
+        if (tile == 0) return 0L;
+        long z = ((long) k << 32 | tile) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // helper function that returns 1 if tile is out of place when in cell k, 0 otherwise
+    private static int misplaced(int tile, int k) {
+        return tile != 0 && tile != k + 1 ? 1 : 0;
+    }
+
+    // helper function that returns the Manhattan distance of tile to its goal cell from cell k
+    private int distance(int tile, int k) {
+        if (tile == 0) return 0;
+        return Math.abs(k / n - (tile - 1) / n) + Math.abs(k % n - (tile - 1) % n);
+    }
+
+    // helper function that exchanges the tiles in cells a, b; updates the cached values
+    // by the difference in the two cells only (the cells of an unpacked board are copied)
+    private Board exch(int a, int b) {
+        int ta = tileAt(a);
+        int tb = tileAt(b);
+        int count = hamming - misplaced(ta, a) - misplaced(tb, b)
+                + misplaced(ta, b) + misplaced(tb, a);
+        int mDist = manhattan - distance(ta, a) - distance(tb, b)
+                + distance(ta, b) + distance(tb, a);
+        int z = blank;
+        if (ta == 0) z = b;
+        else if (tb == 0) z = a;
+
+        if (n <= PACKED_MAX) {
+            long p = packed & ~(0xFL << (a << 2)) & ~(0xFL << (b << 2));
+            p |= (long) tb << (a << 2) | (long) ta << (b << 2);
+            long rk = move(move(rowKey, ta, a / n, b / n, (ta - 1) / n), tb, b / n, a / n,
+                           (tb - 1) / n);
+            long ck = move(move(colKey, ta, a % n, b % n, (ta - 1) % n), tb, b % n, a % n,
+                           (tb - 1) % n);
+            return new Board(n, p, null, 0L, z, count, mDist, rk, ck);
         }
+        char[] c = cells.clone();
+        c[a] = (char) tb;
+        c[b] = (char) ta;
+        long zob = zobrist ^ zobrist(a, ta) ^ zobrist(b, tb) ^ zobrist(a, tb) ^ zobrist(b, ta);
+        return new Board(n, 0L, c, zob, z, count, mDist, 0L, 0L);
     }
 
-    // helper function that exchanges two entries a, b
-    private Board exch(int[] a, int[] b) {
-        int n = board.length;
-        int[][] newTiles = new int[n][n];
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                newTiles[i][j] = board[i][j];
+    // helper function that moves the count of tile (goal line goal) in the count matrix key
+    // from line to line next
+    private long move(long key, int tile, int line, int next, int goal) {
+        if (tile == 0 || line == next) return key;
+        return key - (1L << WalkingDistance.shift(n, line, goal))
+                + (1L << WalkingDistance.shift(n, next, goal));
+    }
+
+    // can the goal board be reached from this board? The number of inversions among the tiles
+    // must be even for odd n; for even n it must differ in parity from the row of the blank
+    boolean isSolvable() {
+        int[] a = new int[n * n - 1];
+        int m = 0;
+        for (int k = 0; k < n * n; k++) {
+            int tile = tileAt(k);
+            if (tile != 0) a[m++] = tile;
+        }
+        long inversions = inversions(a, new int[a.length], 0, a.length);
+        if (n % 2 == 1) return inversions % 2 == 0;
+        return (inversions + blank / n) % 2 == 1;
+    }
+
+    // helper function that merge sorts a[lo, hi) and returns its number of inversions
+    private static long inversions(int[] a, int[] aux, int lo, int hi) {
+        if (hi - lo < 2) return 0;
+        int mid = (lo + hi) >>> 1;
+        long count = inversions(a, aux, lo, mid) + inversions(a, aux, mid, hi);
+        System.arraycopy(a, lo, aux, lo, hi - lo);
+        int i = lo, j = mid;
+        for (int k = lo; k < hi; k++) {
+            if (i == mid) a[k] = aux[j++];
+            else if (j == hi) a[k] = aux[i++];
+            else if (aux[j] < aux[i]) {
+                count += mid - i;
+                a[k] = aux[j++];
             }
+            else a[k] = aux[i++];
         }
+        return count;
+    }
+
+    // cell (row-major) of the empty tile
+    int blankCell() {
+        return blank;
+    }
 
-        int temp = newTiles[a[0]][a[1]];
-        newTiles[a[0]][a[1]] = newTiles[b[0]][b[1]];
-        newTiles[b[0]][b[1]] = temp;
-        return new Board(newTiles);
+    // the board obtained by sliding the tile in cell k, next to the blank, into the blank
+    Board slide(int k) {
+        return exch(blank, k);
     }
 
-    // helper function that finds empty tile in n^2 time worst-case
+    // helper function that returns the position { row, col } of the empty tile
     private int[] findEmpty() {
-        int n = board.length;
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (board[i][j] == 0) {
-                    int[] a = { i, j };
-                    return a;
-                }
-            }
-        }
-        return new int[0];
+        return new int[] { blank / n, blank % n };
     }
 
     // all neighboring boards
     public Iterable<Board> neighbors() {
-        int[] zero = this.findEmpty();
-        ArrayList<Board> boards = new ArrayList<>();
-        int n = board.length;
-        int[][] newTiles = new int[n][n];
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                newTiles[i][j] = board[i][j];
-            }
-        }
-        Board copy = new Board(newTiles);
-        if (zero[0] > 0) {
-            boards.add(copy.exch(zero, new int[] { zero[0] - 1, zero[1] }));
-        }
-        if (zero[0] < n - 1) {
-            boards.add(copy.exch(zero, new int[] { zero[0] + 1, zero[1] }));
-        }
-        if (zero[1] > 0) {
-            boards.add(copy.exch(zero, new int[] { zero[0], zero[1] - 1 }));
-        }
-        if (zero[1] < n - 1) {
-            boards.add(copy.exch(zero, new int[] { zero[0], zero[1] + 1 }));
-        }
-
+        ArrayList<Board> boards = new ArrayList<>(4);
+        int row = blank / n;
+        int col = blank % n;
+        if (row > 0) boards.add(exch(blank, blank - n));
+        if (row < n - 1) boards.add(exch(blank, blank + n));
+        if (col > 0) boards.add(exch(blank, blank - 1));
+        if (col < n - 1) boards.add(exch(blank, blank + 1));
         return boards;
     }
 
     // a board that is obtained by exchanging any pair of tiles
     public Board twin() {
-        int n = board.length;
-        int[][] newTiles = new int[n][n];
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                newTiles[i][j] = board[i][j];
-            }
-        }
-        Board copy = new Board(newTiles);
-        int[] zero = this.findEmpty();
-        if (!Arrays.equals(zero, new int[] { 0, 0 }) && !Arrays.equals(zero, new int[] { 0, 1 }))
-            return copy.exch(new int[] { 0, 0 }, new int[] { 0, 1 });
-        if (!Arrays.equals(zero, new int[] { 0, 0 }) && !Arrays.equals(zero, new int[] { 1, 0 }))
-            return copy.exch(new int[] { 0, 0 }, new int[] { 1, 0 });
-        return copy.exch(new int[] { 0, 1 }, new int[] { 1, 0 });
+        if (blank != 0 && blank != 1) return exch(0, 1);
+        if (blank != 0 && blank != n) return exch(0, n);
+        return exch(1, n);
     }
 
     // unit testing
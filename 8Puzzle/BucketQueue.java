@@ -0,0 +1,90 @@
+/* *****************************************************************************
+ *  Synopsis: priority queue for small non-negative integer priorities f with an
+ *            integer tiebreak h (0 <= h <= f): an array of stacks indexed by f and h.
+ *            delMin() returns an item of least f and, among those, of least h (the
+ *            most recently inserted one). Insert and delMin take constant amortized
+ *            time as long as the minimum f does not drop (as in A* with a consistent
+ *            heuristic).
+ **************************************************************************** */
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+class BucketQueue<Item> {
+
+    private Object[][][] items = new Object[64][][];
+    private int[][] sizes = new int[64][];
+    private int[] lowH = new int[64];
+    private int minF = Integer.MAX_VALUE;
+    private int size;
+
+    // is the queue empty?
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    // number of items in the queue
+    int size() {
+        return size;
+    }
+
+    // add item with priority f and tiebreak h
+    void insert(Item item, int f, int h) {
+        if (h < 0 || h > f) throw new IllegalArgumentException("Need 0 <= h <= f!");
+        if (f >= items.length) {
+            int m = Math.max(2 * items.length, f + 1);
+            items = Arrays.copyOf(items, m);
+            sizes = Arrays.copyOf(sizes, m);
+            lowH = Arrays.copyOf(lowH, m);
+        }
+        if (items[f] == null) {
+            items[f] = new Object[f + 1][];
+            sizes[f] = new int[f + 1];
+            lowH[f] = f + 1;
+        }
+        Object[] stack = items[f][h];
+        int s = sizes[f][h];
+        if (stack == null) stack = items[f][h] = new Object[16];
+        else if (s == stack.length) stack = items[f][h] = Arrays.copyOf(stack, 2 * s);
+        stack[s] = item;
+        sizes[f][h] = s + 1;
+        if (h < lowH[f]) lowH[f] = h;
+        if (f < minF) minF = f;
+        size++;
+    }
+
+    // least priority f in the queue
+    int minPriority() {
+        if (size == 0) throw new NoSuchElementException("Priority queue underflow");
+        seek();
+        return minF;
+    }
+
+    // remove and return an item of least priority, least tiebreak among those
+    @SuppressWarnings("unchecked")
+    Item delMin() {
+        if (size == 0) throw new NoSuchElementException("Priority queue underflow");
+        seek();
+        int h = lowH[minF];
+        int s = --sizes[minF][h];
+        Object[] stack = items[minF][h];
+        Item item = (Item) stack[s];
+        stack[s] = null;
+        size--;
+        return item;
+    }
+
+    // helper function that moves minF and lowH[minF] to the first non-empty stack
+    private void seek() {
+        while (true) {
+            int[] sz = sizes[minF];
+            if (sz != null) {
+                int h = lowH[minF];
+                while (h <= minF && sz[h] == 0) h++;
+                lowH[minF] = h;
+                if (h <= minF) return;
+            }
+            minF++;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/* *****************************************************************************
+ *  Synopsis: lower bound on the number of moves from a board to the goal, used by
+ *            Solver to order its search. Implementations may compute the estimate of
+ *            a neighbor incrementally from the estimate of its parent.
+ *      -- MANHATTAN: sum of Manhattan distances (default)
+ *      -- HAMMING: number of tiles out of place
+ *      -- LINEAR_CONFLICT: Manhattan distance plus linear conflicts
+ *      -- WALKING_DISTANCE: walking distance (n <= 4)
+ *  Dependencies: -- Board.java
+ *                -- WalkingDistance.java
+ **************************************************************************** */
+
+public interface Heuristic {
+
+    // lower bound on the number of moves from board to the goal
+    int estimate(Board board);
+
+    // estimate of child, a neighbor of parent, given that parent's estimate is h
+    default int update(Board parent, int h, Board child) {
+        return estimate(child);
+    }
+
+    Heuristic MANHATTAN = new Heuristic() {
+        public int estimate(Board board) {
+            return board.manhattan();
+        }
+
+        public int update(Board parent, int h, Board child) {
+            return child.manhattan();
+        }
+    };
+
+    Heuristic HAMMING = new Heuristic() {
+        public int estimate(Board board) {
+            return board.hamming();
+        }
+
+        public int update(Board parent, int h, Board child) {
+            return child.hamming();
+        }
+    };
+
+    // a slide only changes the conflicts of the two lines across which the tile moved
+    Heuristic LINEAR_CONFLICT = new Heuristic() {
+        public int estimate(Board board) {
+            return board.linearConflict();
+        }
+
+        public int update(Board parent, int h, Board child) {
+            int n = parent.dimension();
+            int to = parent.blankCell();
+            int from = child.blankCell();
+            boolean vertical = Math.abs(from - to) == n;
+            int a = vertical ? from / n : from % n;
+            int b = vertical ? to / n : to % n;
+            int before = parent.lineConflicts(vertical, a) + parent.lineConflicts(vertical, b);
+            int after = child.lineConflicts(vertical, a) + child.lineConflicts(vertical, b);
+            return h - parent.manhattan() + child.manhattan() + 2 * (after - before);
+        }
+    };
+
+    // a vertical slide only changes the row matrix, a horizontal one the column matrix
+    Heuristic WALKING_DISTANCE = new Heuristic() {
+        public int estimate(Board board) {
+            return board.walkingDistance();
+        }
+
+        public int update(Board parent, int h, Board child) {
+            int n = parent.dimension();
+            boolean vertical = Math.abs(child.blankCell() - parent.blankCell()) == n;
+            return h - WalkingDistance.lookup(n, parent.walkKey(vertical))
+                    + WalkingDistance.lookup(n, child.walkKey(vertical));
+        }
+    };
+}
@@ -0,0 +1,185 @@
+/* *****************************************************************************
+ *  Synopsis: Solver for the nPuzzle using iterative deepening A* (IDA*). Runs
+ *            depth-first searches bounded by f = g + h (h = Manhattan distance) and
+ *            raises the bound to the smallest f that exceeded it, until the goal is
+ *            reached (unsolvable boards are rejected up front by their permutation
+ *            parity). Tiles are slid in place on a single array and undone on the way
+ *            back, so memory is linear in the solution length; suited for 4x4 and 5x5
+ *            boards that exhaust the heap of the A* Solver.
+ *  Dependencies: -- Board.java
+ **************************************************************************** */
+
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class IDASolver {
+
+    private static final int FOUND = -1;
+
+    // blank moves: up, down, left, right (same order as Board.neighbors()); d ^ 1 undoes d
+    private static final int UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3;
+
+    private final Board initial;
+    private final int moves;
+    private final byte[] path;
+
+    // find a solution to the initial board (using the IDA* algorithm)
+    public IDASolver(Board initial) {
+        if (initial == null) throw new IllegalArgumentException("No initial board provided!");
+        this.initial = initial;
+        Search search = new Search();
+        moves = search.solve(initial);
+        path = moves < 0 ? null : Arrays.copyOf(search.path, moves);
+    }
+
+    // scratch state of the search (tiles, blank, h and the current move path) that is slid and
+    // undone in place; reusable across boards so that solving allocates almost nothing
+    static class Search {
+
+        private int n;
+        private int[] tiles = new int[0];
+        private int blank;
+        private int h;
+        private byte[] path = new byte[64];
+        private int moves;
+
+        // number of moves of a shortest solution of board, -1 if unsolvable; the moves
+        // themselves are left in path[0, moves)
+        int solve(Board board) {
+            n = board.dimension();
+            if (tiles.length != n * n) tiles = new int[n * n];
+            for (int k = 0; k < n * n; k++) tiles[k] = board.tileAt(k);
+            blank = board.blankCell();
+            h = board.manhattan();
+            moves = -1;
+            if (!board.isSolvable()) return -1;
+
+            int bound = h;
+            while (true) {
+                int t = search(0, bound, -1);
+                if (t == FOUND) return moves;
+                bound = t;
+            }
+        }
+
+        // helper function: depth-first search below the current board (g moves deep), pruned
+        // at f > bound; returns FOUND or the smallest f that exceeded the bound
+        private int search(int g, int bound, int last) {
+            int f = g + h;
+            if (f > bound) return f;
+            if (h == 0) {
+                moves = g;
+                return FOUND;
+            }
+            if (g == path.length) path = Arrays.copyOf(path, 2 * g);
+
+            int min = Integer.MAX_VALUE;
+            for (int d = UP; d <= RIGHT; d++) {
+                if (d == (last ^ 1)) continue;
+                int cell = target(d);
+                if (cell < 0) continue;
+
+                // slide tile into the blank
+                int from = blank;
+                int tile = tiles[cell];
+                int delta = distance(tile, from) - distance(tile, cell);
+                tiles[from] = tile;
+                tiles[cell] = 0;
+                blank = cell;
+                h += delta;
+                path[g] = (byte) d;
+
+                int t = search(g + 1, bound, d);
+
+                // and back
+                h -= delta;
+                blank = from;
+                tiles[cell] = tile;
+                tiles[from] = 0;
+
+                if (t == FOUND) return FOUND;
+                if (t < min) min = t;
+            }
+            return min;
+        }
+
+        // helper function that returns the cell the blank moves to in direction d; -1 if off
+        // the board
+        private int target(int d) {
+            switch (d) {
+                case UP:
+                    return blank >= n ? blank - n : -1;
+                case DOWN:
+                    return blank < n * (n - 1) ? blank + n : -1;
+                case LEFT:
+                    return blank % n > 0 ? blank - 1 : -1;
+                default:
+                    return blank % n < n - 1 ? blank + 1 : -1;
+            }
+        }
+
+        // helper function that returns the Manhattan distance of tile to its goal cell from
+        // cell k
+        private int distance(int tile, int k) {
+            return Math.abs(k / n - (tile - 1) / n) + Math.abs(k % n - (tile - 1) % n);
+        }
+    }
+
+    // is the initial board solvable?
+    public boolean isSolvable() {
+        return moves >= 0;
+    }
+
+    // min number of moves to solve initial board; -1 if unsolvable
+    public int moves() {
+        return moves;
+    }
+
+    // sequence of boards in a shortest solution; null if unsolvable
+    public Iterable<Board> solution() {
+        if (!this.isSolvable()) return null;
+        int n = initial.dimension();
+        ArrayList<Board> boards = new ArrayList<>(moves + 1);
+        Board b = initial;
+        boards.add(b);
+        for (int i = 0; i < moves; i++) {
+            int k = b.blankCell();
+            switch (path[i]) {
+                case UP:
+                    k -= n;
+                    break;
+                case DOWN:
+                    k += n;
+                    break;
+                case LEFT:
+                    k -= 1;
+                    break;
+                default:
+                    k += 1;
+            }
+            b = b.slide(k);
+            boards.add(b);
+        }
+        return boards;
+    }
+
+    // test client
+    public static void main(String[] args) {
+        int[][] tiles = {
+                { 10, 9, 5, 3 }, { 6, 15, 11, 1 }, { 13, 8, 2, 12 }, { 4, 0, 7, 14 }
+        };
+        Board puzzle = new Board(tiles);
+        Stopwatch sw = new Stopwatch();
+        IDASolver solver = new IDASolver(puzzle);
+        double t = sw.elapsedTime();
+
+        StdOut.printf(puzzle.toString());
+        if (!solver.isSolvable()) StdOut.println("The puzzle cannot be solved!");
+        else StdOut.println("The puzzle can be solved in " + solver.moves() + " moves!");
+        StdOut.println("Time: " + t);
+    }
+
+}
@@ -0,0 +1,73 @@
+/* *****************************************************************************
+ *  Synopsis: map from primitive longs to values (open addressing with linear
+ *            probing), used by the puzzle solvers to look up search nodes by board
+ *            key without boxing. Grows by doubling once it is half full.
+ **************************************************************************** */
+
+class LongHashMap<Value> {
+
+    private long[] keys;
+    private Object[] vals;
+    private int size;
+    private int mask;
+
+    // create an empty map with room for about capacity keys before growing
+    LongHashMap(int capacity) {
+        int m = 16;
+        while (m < 2 * capacity) m <<= 1;
+        keys = new long[m];
+        vals = new Object[m];
+        mask = m - 1;
+    }
+
+    // number of keys in the map
+    int size() {
+        return size;
+    }
+
+    // value of key; null if key is not in the map
+    @SuppressWarnings("unchecked")
+    Value get(long key) {
+        for (int i = slot(key); vals[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) return (Value) vals[i];
+        }
+        return null;
+    }
+
+    // associate val (not null) with key, replacing any previous value
+    void put(long key, Value val) {
+        if (val == null) throw new IllegalArgumentException("Value must not be null!");
+        int i = slot(key);
+        for (; vals[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                vals[i] = val;
+                return;
+            }
+        }
+        keys[i] = key;
+        vals[i] = val;
+        if (++size > (mask + 1) >> 1) resize();
+    }
+
+    // helper function that spreads the bits of key over the table
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    // helper function that doubles the table and re-inserts all entries
+    private void resize() {
+        long[] oldKeys = keys;
+        Object[] oldVals = vals;
+        keys = new long[oldKeys.length << 1];
+        vals = new Object[oldKeys.length << 1];
+        mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldVals[j] == null) continue;
+            int i = slot(oldKeys[j]);
+            while (vals[i] != null) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            vals[i] = oldVals[j];
+        }
+    }
+}
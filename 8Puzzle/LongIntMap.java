@@ -0,0 +1,79 @@
+/* *****************************************************************************
+ *  Synopsis: map from primitive longs to non-negative ints (open addressing with
+ *            linear probing), used by Solver to keep the least number of moves in
+ *            which every board key was reached, without boxing. Grows by doubling
+ *            once it is half full.
+ **************************************************************************** */
+
+class LongIntMap {
+
+    private long[] keys;
+    private int[] vals;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    // create an empty map with room for about capacity keys before growing
+    LongIntMap(int capacity) {
+        int m = 16;
+        while (m < 2 * capacity) m <<= 1;
+        keys = new long[m];
+        vals = new int[m];
+        used = new boolean[m];
+        mask = m - 1;
+    }
+
+    // number of keys in the map
+    int size() {
+        return size;
+    }
+
+    // value of key; -1 if key is not in the map
+    int get(long key) {
+        for (int i = slot(key); used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) return vals[i];
+        }
+        return -1;
+    }
+
+    // associate val (non-negative) with key, replacing any previous value
+    void put(long key, int val) {
+        if (val < 0) throw new IllegalArgumentException("Value must not be negative!");
+        int i = slot(key);
+        for (; used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                vals[i] = val;
+                return;
+            }
+        }
+        keys[i] = key;
+        vals[i] = val;
+        used[i] = true;
+        if (++size > (mask + 1) >> 1) resize();
+    }
+
+    // helper function that spreads the bits of key over the table
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    // helper function that doubles the table and re-inserts all entries
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldVals = vals;
+        boolean[] oldUsed = used;
+        keys = new long[oldKeys.length << 1];
+        vals = new int[oldKeys.length << 1];
+        used = new boolean[oldKeys.length << 1];
+        mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (!oldUsed[j]) continue;
+            int i = slot(oldKeys[j]);
+            while (used[i]) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            vals[i] = oldVals[j];
+            used[i] = true;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/* *****************************************************************************
+ *  Synopsis: parallel A* for the nPuzzle with a hash-distributed frontier (HDA*).
+ *            Every board is owned by one worker thread, chosen by the hash of its
+ *            key; each worker keeps its own open list and best-g map and sends the
+ *            neighbors it generates to their owners through lock-free queues. Goals
+ *            only improve the incumbent solution; the search ends once no worker has a
+ *            node with f below the incumbent and no node is in flight, so the solution
+ *            is optimal as with Solver.
+ *            Termination: work counts the active workers plus the nodes in flight; a
+ *            node is counted before it is sent and released after it was received
+ *            (by then its owner counts itself active), so work is 0 only when all
+ *            workers are idle and all queues are empty.
+ *  Dependencies: -- Board.java
+ *                -- BucketQueue.java
+ *                -- Heuristic.java
+ *                -- LongHashMap.java
+ **************************************************************************** */
+
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ParallelSolver {
+
+    private final Heuristic heuristic;
+    private final Worker[] workers;
+    private final AtomicInteger work = new AtomicInteger();
+    private final AtomicReference<Node> incumbent = new AtomicReference<>();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private final Node finalNode;
+    private final boolean sol;
+
+    // create helper class that stores board, #moves, parent and lower bound h (immutable, so
+    // it may be handed between workers)
+    private static class Node {
+
+        private final Board board;
+        private final int moves;
+        private final Node prev;
+        private final int h;
+
+        public Node(Board board, int moves, Node prev, int h) {
+            this.board = board;
+            this.moves = moves;
+            this.prev = prev;
+            this.h = h;
+        }
+    }
+
+    // find a solution to the initial board (using HDA* with threads workers)
+    public ParallelSolver(Board initial, Heuristic heuristic, int threads) {
+        if (initial == null) throw new IllegalArgumentException("No initial board provided!");
+        if (heuristic == null) throw new IllegalArgumentException("No heuristic provided!");
+        if (threads < 1) throw new IllegalArgumentException("Need at least one thread!");
+        this.heuristic = heuristic;
+        this.workers = new Worker[threads];
+
+        if (!initial.isSolvable()) {
+            sol = false;
+            finalNode = null;
+            return;
+        }
+        sol = true;
+
+        for (int i = 0; i < threads; i++) workers[i] = new Worker();
+        Node start = new Node(initial, 0, null, heuristic.estimate(initial));
+        workers[owner(initial.key())].receive(start);
+
+        work.set(threads);
+        Thread[] pool = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            pool[i] = new Thread(workers[i], "hda-" + i);
+            pool[i].start();
+        }
+        try {
+            for (Thread t : pool) t.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while solving!", e);
+        }
+        if (failure.get() != null) throw failure.get();
+        finalNode = incumbent.get();
+    }
+
+    // create helper class for one worker: its open list, the best node seen per board key it
+    // owns and the queue of nodes sent to it
+    private class Worker implements Runnable {
+
+        private final BucketQueue<Node> pq = new BucketQueue<>();
+        private final LongHashMap<Node> best = new LongHashMap<>(1 << 10);
+        private final ConcurrentLinkedQueue<Node> inbox = new ConcurrentLinkedQueue<>();
+
+        public void run() {
+            try {
+                search();
+            }
+            catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        // helper function: expand nodes below the incumbent until the whole search is done
+        private void search() {
+            boolean active = true;
+            while (failure.get() == null) {
+                Node m;
+                while ((m = inbox.poll()) != null) {
+                    receive(m);
+                    work.decrementAndGet();
+                }
+
+                if (!pq.isEmpty() && pq.minPriority() < bound()) {
+                    Node node = pq.delMin();
+                    if (best.get(node.board.key()) != node) continue;
+                    if (node.board.isGoal()) improve(node);
+                    else expand(node);
+                    continue;
+                }
+
+                // idle: wait for a node to arrive, or for everybody else to be idle as well
+                if (active) {
+                    active = false;
+                    work.decrementAndGet();
+                }
+                while (inbox.isEmpty()) {
+                    if (work.get() == 0 || failure.get() != null) return;
+                    Thread.yield();
+                }
+                active = true;
+                work.incrementAndGet();
+            }
+        }
+
+        // helper function that keeps node if it is the best way to its board so far
+        private void receive(Node node) {
+            int f = node.moves + node.h;
+            if (f >= bound()) return;
+            long key = node.board.key();
+            Node old = best.get(key);
+            if (old != null && old.moves <= node.moves) return;
+            best.put(key, node);
+            pq.insert(node, f, node.h);
+        }
+
+        // helper function that hands the neighbors of node to their owners
+        private void expand(Node node) {
+            for (Board b : node.board.neighbors()) {
+                if (node.prev != null && b.equals(node.prev.board)) continue;
+                int h = heuristic.update(node.board, node.h, b);
+                Node child = new Node(b, node.moves + 1, node, h);
+                Worker w = workers[owner(b.key())];
+                if (w == this) receive(child);
+                else {
+                    work.incrementAndGet();
+                    w.inbox.add(child);
+                }
+            }
+        }
+    }
+
+    // helper function that returns the index of the worker owning the board with key
+    private int owner(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) % workers.length;
+    }
+
+    // helper function that returns the number of moves of the incumbent solution
+    private int bound() {
+        Node node = incumbent.get();
+        return node == null ? Integer.MAX_VALUE : node.moves;
+    }
+
+    // helper function that makes goal the incumbent if it is shorter
+    private void improve(Node goal) {
+        while (true) {
+            Node current = incumbent.get();
+            if (current != null && current.moves <= goal.moves) return;
+            if (incumbent.compareAndSet(current, goal)) return;
+        }
+    }
+
+    // is the initial board solvable?
+    public boolean isSolvable() {
+        return sol;
+    }
+
+    // min number of moves to solve initial board; -1 if unsolvable
+    public int moves() {
+        if (!this.isSolvable()) return -1;
+        return finalNode.moves;
+    }
+
+    // sequence of boards in a shortest solution; null if unsolvable
+    public Iterable<Board> solution() {
+        if (!this.isSolvable()) return null;
+        Board[] path = new Board[finalNode.moves + 1];
+        for (Node node = finalNode; node != null; node = node.prev) path[node.moves] = node.board;
+        List<Board> boards = new ArrayList<>(path.length);
+        for (Board b : path) boards.add(b);
+        return boards;
+    }
+
+    // test client: time random 4x4 boards with 1, 2, 4, ... threads
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int n = 4;
+        Board[] boards = new Board[count];
+        for (int i = 0; i < count; i++) {
+            int[][] tiles = new int[n][n];
+            for (int k = 0; k < n * n; k++) tiles[k / n][k % n] = (k + 1) % (n * n);
+            Board b = new Board(tiles);
+            for (int step = 0; step < 1000; step++) {
+                List<Board> next = new ArrayList<>();
+                for (Board nb : b.neighbors()) next.add(nb);
+                b = next.get(StdRandom.uniformInt(next.size()));
+            }
+            boards[i] = b;
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int p = 1; p <= cores; p *= 2) {
+            long start = System.nanoTime();
+            for (Board b : boards) new ParallelSolver(b, Heuristic.LINEAR_CONFLICT, p);
+            StdOut.printf("%2d threads: %.3fs%n", p, (System.nanoTime() - start) / 1e9);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/* *****************************************************************************
+ *  Synopsis: additive disjoint pattern databases for the nPuzzle. The tiles are
+ *            partitioned into patterns; for every placement of a pattern's tiles the
+ *            database stores the least number of moves of those tiles needed to bring
+ *            them home (other tiles are indistinguishable and move for free). Since the
+ *            patterns are disjoint, the sum of the lookups is an admissible heuristic
+ *            that dominates the Manhattan distance. It is not consistent: every entry
+ *            is the least over all cells of the blank, so a move of the blank may lower
+ *            the sum by more than one (Solver reopens boards for this reason).
+ *            Tables are computed by a retrograde 0-1 breadth-first search from the goal
+ *            and stored one byte per placement, indexed by the rank of the partial
+ *            permutation of the pattern's cells. Building is an offline step (see
+ *            main()); saved databases are memory-mapped when loaded.
+ *  Dependencies: -- Board.java
+ *                -- Heuristic.java
+ *                -- IDASolver.java
+ *                -- Solver.java
+ **************************************************************************** */
+
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+public class PatternDatabase implements Heuristic {
+
+    private static final int MAGIC = 0x50444231; // "PDB1"
+
+    private final int n;
+    private final int[][] patterns;
+    private final ByteBuffer[] tables;
+
+    // the 6-6-3 partition for 4x4 boards and a 5-5-5-5-4 partition for 5x5 boards
+    public static int[][] defaultPartition(int n) {
+        if (n == 4) {
+            return new int[][] {
+                    { 1, 5, 6, 9, 10, 13 }, { 7, 8, 11, 12, 14, 15 }, { 2, 3, 4 }
+            };
+        }
+        if (n == 5) {
+            return new int[][] {
+                    { 1, 2, 3, 6, 7 }, { 4, 5, 8, 9, 10 }, { 11, 12, 13, 16, 17 },
+                    { 14, 15, 18, 19, 20 }, { 21, 22, 23, 24 }
+            };
+        }
+        throw new IllegalArgumentException("No default partition for n = " + n + "!");
+    }
+
+    // build the databases for n-by-n boards and the given partition of the tiles 1..n^2-1
+    public PatternDatabase(int n, int[][] partition) {
+        if (n < 2 || n > 5) throw new IllegalArgumentException("n must be between 2 and 5!");
+        if (partition == null) throw new IllegalArgumentException("No partition provided!");
+        this.n = n;
+        this.patterns = new int[partition.length][];
+        boolean[] seen = new boolean[n * n];
+        for (int i = 0; i < partition.length; i++) {
+            patterns[i] = partition[i].clone();
+            for (int tile : patterns[i]) {
+                if (tile < 1 || tile >= n * n || seen[tile]) {
+                    throw new IllegalArgumentException("Patterns must be disjoint sets of tiles!");
+                }
+                seen[tile] = true;
+            }
+        }
+        for (int tile = 1; tile < n * n; tile++) {
+            if (!seen[tile]) {
+                throw new IllegalArgumentException("Tile " + tile + " is in no pattern!");
+            }
+        }
+
+        tables = new ByteBuffer[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            tables[i] = ByteBuffer.wrap(build(patterns[i]));
+        }
+    }
+
+    // create a database from already computed tables
+    private PatternDatabase(int n, int[][] patterns, ByteBuffer[] tables) {
+        this.n = n;
+        this.patterns = patterns;
+        this.tables = tables;
+    }
+
+    // board dimension n
+    public int dimension() {
+        return n;
+    }
+
+    // sum of the pattern distances of board, a lower bound on its number of moves to the goal
+    public int estimate(Board board) {
+        if (board.dimension() != n) throw new IllegalArgumentException("Wrong board dimension!");
+        int[] cell = new int[n * n];
+        for (int k = 0; k < n * n; k++) cell[board.tileAt(k)] = k;
+
+        int h = 0;
+        for (int i = 0; i < patterns.length; i++) {
+            int[] pattern = patterns[i];
+            int[] pos = new int[pattern.length];
+            for (int j = 0; j < pattern.length; j++) pos[j] = cell[pattern[j]];
+            h += tables[i].get((int) rank(pos, n * n)) & 0xFF;
+        }
+        return h;
+    }
+
+    // helper function that builds the table of one pattern by a 0-1 BFS over the placements of
+    // its tiles together with the blank: moving another tile is free, moving a pattern tile
+    // costs one
+    private byte[] build(int[] pattern) {
+        int cells = n * n;
+        int k = pattern.length;
+        long entries = falling(cells, k);
+        if (entries * cells > Integer.MAX_VALUE || 5 * (k + 1) > 64) {
+            throw new IllegalArgumentException("Pattern of " + k + " tiles is too large!");
+        }
+        byte[] table = new byte[(int) entries];
+        Arrays.fill(table, (byte) -1);
+        long[] visited = new long[(int) ((entries * cells + 63) >>> 6)];
+
+        // states are packed as 5 bits per cell: blank first, then the pattern tiles
+        int[][] adjacent = new int[cells][];
+        for (int c = 0; c < cells; c++) adjacent[c] = adjacent(c);
+        int[] pos = new int[k];
+        int[] scratch = new int[k];
+        int[] owner = new int[cells];
+        Arrays.fill(owner, -1);
+        long start = cells - 1;
+        for (int j = 0; j < k; j++) start |= (long) (pattern[j] - 1) << (5 * (j + 1));
+
+        LongStack layer = new LongStack();
+        LongStack next = new LongStack();
+        next.push(start);
+        for (int d = 0; !next.isEmpty(); d++) {
+            LongStack t = layer;
+            layer = next;
+            next = t;
+
+            // states of this layer that were not reached for free at an earlier distance
+            LongStack current = new LongStack();
+            while (!layer.isEmpty()) {
+                long s = layer.pop();
+                if (mark(visited, s, scratch, table, d)) current.push(s);
+            }
+
+            while (!current.isEmpty()) {
+                long s = current.pop();
+                int blank = (int) (s & 31);
+                for (int j = 0; j < k; j++) {
+                    pos[j] = (int) (s >>> (5 * (j + 1))) & 31;
+                    owner[pos[j]] = j;
+                }
+                for (int c : adjacent[blank]) {
+                    int j = owner[c];
+                    long moved = s & ~31L | c;
+                    if (j >= 0) {
+                        moved = moved & ~(31L << (5 * (j + 1))) | (long) blank << (5 * (j + 1));
+                        next.push(moved);
+                    }
+                    else if (mark(visited, moved, scratch, table, d)) current.push(moved);
+                }
+                for (int j = 0; j < k; j++) owner[pos[j]] = -1;
+            }
+        }
+        return table;
+    }
+
+    // helper function that marks the packed state s as visited at distance d; returns false
+    // if it was visited before
+    private boolean mark(long[] visited, long s, int[] pos, byte[] table, int d) {
+        int cells = n * n;
+        for (int j = 0; j < pos.length; j++) pos[j] = (int) (s >>> (5 * (j + 1))) & 31;
+        int r = (int) rank(pos, cells);
+        long id = (long) r * cells + (s & 31);
+        int w = (int) (id >>> 6);
+        long bit = 1L << id;
+        if ((visited[w] & bit) != 0) return false;
+        visited[w] |= bit;
+        if (table[r] == -1) table[r] = (byte) d;
+        return true;
+    }
+
+    // helper function that returns the cells next to cell c
+    private int[] adjacent(int c) {
+        int row = c / n;
+        int col = c % n;
+        int[] a = new int[4];
+        int m = 0;
+        if (row > 0) a[m++] = c - n;
+        if (row < n - 1) a[m++] = c + n;
+        if (col > 0) a[m++] = c - 1;
+        if (col < n - 1) a[m++] = c + 1;
+        return Arrays.copyOf(a, m);
+    }
+
+    // helper function that returns the rank of the distinct cells pos[] among all
+    // placements of pos.length tiles into cells cells (lexicographic order)
+    private static long rank(int[] pos, int cells) {
+        long r = 0;
+        int k = pos.length;
+        for (int i = 0; i < k; i++) {
+            int smaller = 0;
+            for (int j = 0; j < i; j++) {
+                if (pos[j] < pos[i]) smaller++;
+            }
+            r = r * (cells - i) + pos[i] - smaller;
+        }
+        return r;
+    }
+
+    // helper function that returns a * (a - 1) * ... * (a - b + 1)
+    private static long falling(int a, int b) {
+        long f = 1;
+        for (int i = 0; i < b; i++) f *= a - i;
+        return f;
+    }
+
+    // write the databases to a file
+    public void save(String filename) {
+        try (FileOutputStream file = new FileOutputStream(filename);
+             DataOutputStream out = new DataOutputStream(file)) {
+            out.writeInt(MAGIC);
+            out.writeInt(n);
+            out.writeInt(patterns.length);
+            for (int[] pattern : patterns) {
+                out.writeInt(pattern.length);
+                for (int tile : pattern) out.writeInt(tile);
+            }
+            out.flush();
+            for (ByteBuffer table : tables) file.getChannel().write(table.duplicate().clear());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // read databases written by save(), memory-mapping the tables
+    public static PatternDatabase load(String filename) {
+        int n;
+        int[][] patterns;
+        long offset;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(filename))) {
+            if (in.readInt() != MAGIC) {
+                throw new IllegalArgumentException(filename + " is not a pattern database!");
+            }
+            n = in.readInt();
+            patterns = new int[in.readInt()][];
+            offset = 12;
+            for (int i = 0; i < patterns.length; i++) {
+                patterns[i] = new int[in.readInt()];
+                for (int j = 0; j < patterns[i].length; j++) patterns[i][j] = in.readInt();
+                offset += 4 + 4L * patterns[i].length;
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        ByteBuffer[] tables = new ByteBuffer[patterns.length];
+        try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+             FileChannel channel = file.getChannel()) {
+            for (int i = 0; i < patterns.length; i++) {
+                long size = falling(n * n, patterns[i].length);
+                tables[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+                offset += size;
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new PatternDatabase(n, patterns, tables);
+    }
+
+    // growable stack of primitive longs used as BFS frontier
+    private static class LongStack {
+
+        private long[] a = new long[1 << 10];
+        private int size;
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private void push(long x) {
+            if (size == a.length) a = Arrays.copyOf(a, 2 * size);
+            a[size++] = x;
+        }
+
+        private long pop() {
+            return a[--size];
+        }
+    }
+
+    // helper function that checks that Solver with pdb finds solutions of the same length as
+    // IDASolver (which is guided by the consistent Manhattan distance), in both directions
+    private static void checkOptimal(Board board, PatternDatabase pdb) {
+        int moves = new IDASolver(board).moves();
+        for (boolean bidirectional : new boolean[] { false, true }) {
+            int found = new Solver(board, pdb, bidirectional).moves();
+            if (found != moves) {
+                throw new IllegalStateException("Solver found " + found + " instead of " + moves
+                                                        + " moves for\n" + board);
+            }
+        }
+    }
+
+    // helper function that checks Solver against IDASolver on the 3x3 boards on which it
+    // missed the shortest solution before it reopened boards, then on random ones
+    private static void checkSolver() {
+        int[][][] partitions = {
+                { { 1, 2, 3, 4 }, { 5, 6, 7, 8 } }, { { 1, 4, 7 }, { 2, 5, 8 }, { 3, 6 } }
+        };
+        int[][][] known = {
+                { { 8, 7, 6 }, { 1, 0, 2 }, { 5, 3, 4 } }, { { 3, 5, 8 }, { 0, 6, 1 }, { 7, 4, 2 } }
+        };
+        int[] cells = new int[9];
+        for (int i = 0; i < 9; i++) cells[i] = i;
+        for (int i = 0; i < partitions.length; i++) {
+            PatternDatabase small = new PatternDatabase(3, partitions[i]);
+            checkOptimal(new Board(known[i]), small);
+            for (int trial = 0; trial < 500; trial++) {
+                StdRandom.shuffle(cells);
+                int[][] tiles = new int[3][3];
+                for (int k = 0; k < 9; k++) tiles[k / 3][k % 3] = cells[k];
+                checkOptimal(new Board(tiles), small);
+            }
+        }
+        StdOut.println("Solver agrees with IDASolver on 3x3 boards");
+    }
+
+    // offline build: java PatternDatabase n filename [tiles/tiles/...], e.g.
+    // java -Xmx2g PatternDatabase 4 pdb4.db 1,5,6,9,10,13/7,8,11,12,14,15/2,3,4
+    // or java PatternDatabase -check to check Solver against IDASolver on 3x3 boards
+    public static void main(String[] args) {
+        if (args.length == 1 && args[0].equals("-check")) {
+            checkSolver();
+            return;
+        }
+        if (args.length < 2) {
+            StdOut.println("Usage: java PatternDatabase n filename [tiles/tiles/...]");
+            StdOut.println("       java PatternDatabase -check");
+            return;
+        }
+
+        int n = Integer.parseInt(args[0]);
+        String filename = args[1];
+        int[][] partition;
+        if (args.length > 2) {
+            String[] parts = args[2].split("/");
+            partition = new int[parts.length][];
+            for (int i = 0; i < parts.length; i++) {
+                partition[i] = Arrays.stream(parts[i].split(",")).mapToInt(Integer::parseInt)
+                                     .toArray();
+            }
+        }
+        else partition = defaultPartition(n);
+
+        Stopwatch sw = new Stopwatch();
+        PatternDatabase pdb = new PatternDatabase(n, partition);
+        StdOut.println("Built in " + sw.elapsedTime() + "s");
+        pdb.save(filename);
+
+        Stopwatch sw1 = new Stopwatch();
+        PatternDatabase loaded = PatternDatabase.load(filename);
+        StdOut.println("Loaded in " + sw1.elapsedTime() + "s");
+
+        int[][] tiles = new int[n][n];
+        for (int k = 0; k < n * n; k++) tiles[k / n][k % n] = (n * n - 1 - k);
+        Board board = new Board(tiles);
+        StdOut.printf(board.toString());
+        StdOut.println("Manhattan: " + board.manhattan());
+        StdOut.println("Pattern databases: " + loaded.estimate(board));
+    }
+}
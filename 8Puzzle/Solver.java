@@ -1,82 +1,315 @@
 /* *****************************************************************************
  *  Synopsis: Solver for the 8Puzzle (https://www.8puzzle.com/8_puzzle_problem.html).
+ *            A* with a bucket queue ordered by f = g + h, ties broken by smaller h;
+ *            optionally bidirectional. A board reached again in fewer moves is queued
+ *            again, even if it was expanded, so the solution stays shortest for
+ *            heuristics that are admissible but not consistent.
+ *            Search nodes keep their (packed) board only while they are on the
+ *            frontier; the search tree itself is made of 2-bit move codes, from which
+ *            the solution is replayed on demand.
+ *            With a SolverListener, counters and timings of the search are collected
+ *            and reported when it is done; without one, nothing is measured.
  *  Dependencies: -- Board.java
+ *                -- BucketQueue.java
+ *                -- Heuristic.java
+ *                -- LongHashMap.java
+ *                -- LongIntMap.java
+ *                -- SolverListener.java
+ *                -- SolverMetrics.java
  **************************************************************************** */
 
-import edu.princeton.cs.algs4.MinPQ;
-import edu.princeton.cs.algs4.Stack;
 import edu.princeton.cs.algs4.StdOut;
 
-import java.util.Comparator;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public class Solver {
 
-    private int count = 0;
-    private Node finalNode = null;
+    // directions in which the blank moves, as returned by directions(); d ^ 1 undoes d
+    public static final byte UP = 0, DOWN = 1, LEFT = 2, RIGHT = 3;
+
+    private final Board initial;
+    private byte[] path = null;
     private boolean sol = true;
+    private final Heuristic heuristic;
+    private final SolverMetrics metrics;
+
+    // best connection of the two searches in bidirectional mode
+    private int best = Integer.MAX_VALUE;
+    private Node meetF, meetB;
 
-    // create helper class that stores board, #moves and parent board
-    private class Node {
+    // create helper class that stores board (dropped once expanded), #moves, parent, move code
+    // from the parent and lower bound h
+    private static class Node {
 
         private Board board;
-        private int moves;
-        private Node prev;
-        private int priority;
+        private final int moves;
+        private final Node prev;
+        private final byte move;
+        private final int h;
 
-        public Node(Board board, int moves, Node prev) {
+        public Node(Board board, int moves, Node prev, byte move, int h) {
             this.board = board;
             this.moves = moves;
             this.prev = prev;
-            this.priority = board.manhattan() + moves;
+            this.move = move;
+            this.h = h;
         }
     }
 
-    // find a solution to the initial board (using the A* algorithm)
-    public Solver(Board initial) {
-        if (initial == null) throw new IllegalArgumentException("No initial board provided!");
+    // create helper class that stores the open nodes of one direction, the least #moves in
+    // which it reached every board and (bidirectional only) the node of that #moves
+    private class Search {
 
-        Comparator<Node> byPriority = new Comparator<Node>() {
-            public int compare(Node o1, Node o2) {
-                return Integer.compare(o1.priority, o2.priority);
-            }
-        };
+        private final BucketQueue<Node> pq = new BucketQueue<>();
+        private final LongIntMap reached = new LongIntMap(1 << 10);
+        private final LongHashMap<Node> seen;
+        private final int[] target;
+        private final boolean forward;
+        private Search other;
 
-        MinPQ<Node> pq = new MinPQ<>(byPriority);
-        MinPQ<Node> tq = new MinPQ<>(byPriority);
-        pq.insert(new Node(initial, 0, null));
-        Node next = pq.delMin();
+        // search towards the goal (target == null) or towards the board with tiles in cells
+        // target[tile] (Manhattan distance); bidirectional searches match their nodes against
+        // the other direction
+        private Search(Node start, int[] target, boolean forward, boolean bidirectional) {
+            this.target = target;
+            this.forward = forward;
+            this.seen = bidirectional ? new LongHashMap<>(1 << 10) : null;
+            reached.put(start.board.key(), 0);
+            if (seen != null) seen.put(start.board.key(), start);
+            insert(start);
+        }
 
-        // check if twin can be solved instead
-        Board twin = initial.twin();
-        tq.insert(new Node(twin, 0, null));
-        Node nextTwin = tq.delMin();
+        // helper function that returns the lower bound of child, a neighbor of node
+        private int h(Node node, Board child) {
+            if (metrics == null) return update(node, child);
+            long start = System.nanoTime();
+            int h = update(node, child);
+            metrics.heuristicNanos += System.nanoTime() - start;
+            return h;
+        }
 
-        // iterate over both initial and twin to avoid infinite loop
-        while (!next.board.isGoal() && !nextTwin.board.isGoal()) {
+        // helper function that computes the lower bound of child, a neighbor of node
+        private int update(Node node, Board child) {
+            if (target == null) return heuristic.update(node.board, node.h, child);
+            int n = child.dimension();
+            int from = child.blankCell();
+            int to = node.board.blankCell();
+            int cell = target[child.tileAt(to)];
+            int before = Math.abs(from / n - cell / n) + Math.abs(from % n - cell % n);
+            int after = Math.abs(to / n - cell / n) + Math.abs(to % n - cell % n);
+            return node.h - before + after;
+        }
 
-            for (Board b : next.board.neighbors()) {
-                if (next.prev == null || !b.equals(next.prev.board)) {
-                    pq.insert(new Node(b, next.moves + 1, next));
+        // helper function that returns the next node that is still the best way to its board
+        // (a board is never queued twice with the same #moves); null if there is none left
+        private Node next() {
+            while (!pq.isEmpty()) {
+                Node next;
+                if (metrics == null) next = pq.delMin();
+                else {
+                    long start = System.nanoTime();
+                    next = pq.delMin();
+                    metrics.queueNanos += System.nanoTime() - start;
                 }
+                if (reached.get(next.board.key()) == next.moves) return next;
+                if (metrics != null) metrics.duplicates++;
+            }
+            return null;
+        }
+
+        // helper function that adds node to the open list
+        private void insert(Node node) {
+            if (metrics == null) {
+                pq.insert(node, node.moves + node.h, node.h);
+                return;
             }
-            next = pq.delMin();
+            long start = System.nanoTime();
+            pq.insert(node, node.moves + node.h, node.h);
+            metrics.queueNanos += System.nanoTime() - start;
+            metrics.generated++;
+            int frontier = pq.size() + (other == null ? 0 : other.pq.size());
+            if (frontier > metrics.peakFrontier) metrics.peakFrontier = frontier;
+        }
+
+        // helper function that queues the neighbors of node that were not reached before in as
+        // few moves (reopening boards that were expanded with more moves, since a heuristic
+        // such as a PatternDatabase need not be consistent), matches them against the other
+        // direction, if any, and drops the board of node
+        private void expand(Node node) {
+            Board board = node.board;
+            int n = board.dimension();
+            if (metrics != null) metrics.expanded++;
+            for (Board b : board.neighbors()) {
+                long key = b.key();
+                int moves = reached.get(key);
+                if (moves >= 0 && moves <= node.moves + 1) {
+                    if (metrics != null) metrics.duplicates++;
+                    continue;
+                }
+                byte move = direction(b.blankCell() - board.blankCell(), n);
+                Node child = new Node(b, node.moves + 1, node, move, h(node, b));
+                reached.put(key, child.moves);
+                insert(child);
+                if (seen == null) continue;
 
-            for (Board t : nextTwin.board.neighbors()) {
-                if (nextTwin.prev == null || !t.equals(nextTwin.prev.board)) {
-                    tq.insert(new Node(t, nextTwin.moves + 1, nextTwin));
+                seen.put(key, child);
+                Node theirs = other.seen.get(key);
+                if (theirs != null && child.moves + theirs.moves < best) {
+                    best = child.moves + theirs.moves;
+                    meetF = forward ? child : theirs;
+                    meetB = forward ? theirs : child;
                 }
             }
-            nextTwin = tq.delMin();
+            node.board = null;
         }
-        if (next.board.isGoal()) {
-            sol = true;
-            finalNode = next;
+    }
+
+    // find a solution to the initial board (using the A* algorithm)
+    public Solver(Board initial) {
+        this(initial, Heuristic.MANHATTAN);
+    }
+
+    // find a solution to the initial board, ordering the search by heuristic
+    // (e.g. Heuristic.LINEAR_CONFLICT or a PatternDatabase)
+    public Solver(Board initial, Heuristic heuristic) {
+        this(initial, heuristic, false);
+    }
+
+    // find a solution to the initial board; if bidirectional, search from the goal as well
+    // (guided by the Manhattan distance to the initial board) until the searches meet
+    public Solver(Board initial, Heuristic heuristic, boolean bidirectional) {
+        this(initial, heuristic, bidirectional, null);
+    }
+
+    // find a solution to the initial board and report the metrics of the search to listener
+    // (if not null)
+    public Solver(Board initial, Heuristic heuristic, boolean bidirectional,
+                  SolverListener listener) {
+        if (initial == null) throw new IllegalArgumentException("No initial board provided!");
+        if (heuristic == null) throw new IllegalArgumentException("No heuristic provided!");
+        this.initial = initial;
+        this.heuristic = heuristic;
+        this.metrics = listener == null ? null : new SolverMetrics();
+        if (metrics == null) {
+            solve(bidirectional);
+            return;
         }
-        else {
+
+        long start = System.nanoTime();
+        long bytes = allocatedBytes();
+        solve(bidirectional);
+        metrics.totalNanos = System.nanoTime() - start;
+        long after = allocatedBytes();
+        if (bytes >= 0 && after >= 0) metrics.allocatedBytes = after - bytes;
+        listener.solved(metrics);
+    }
+
+    // helper function that runs the search from the initial board
+    private void solve(boolean bidirectional) {
+        // unsolvable boards are detected from their permutation parity, without searching
+        if (!initial.isSolvable()) {
             sol = false;
+            return;
+        }
+
+        long t = metrics == null ? 0 : System.nanoTime();
+        Node start = new Node(initial, 0, null, UP, heuristic.estimate(initial));
+        if (metrics != null) metrics.heuristicNanos += System.nanoTime() - t;
+        if (bidirectional && !initial.isGoal()) {
+            bidirectional(start);
+            return;
+        }
+
+        Search search = new Search(start, null, true, false);
+        Node next = search.next();
+        while (!next.board.isGoal()) {
+            search.expand(next);
+            next = search.next();
+            if (next == null) {
+                throw new IllegalStateException("Search space exhausted before reaching the goal!");
+            }
+        }
+        path = new byte[next.moves];
+        for (Node node = next; node.prev != null; node = node.prev) {
+            path[node.moves - 1] = node.move;
         }
     }
 
+    // helper function that runs A* from initial and from the goal, always expanding the
+    // smaller frontier; every node generated on one side is matched against the nodes
+    // generated on the other. Stops once the best connection found is no longer than the
+    // larger of the two least priorities, which lower-bounds any other connection
+    private void bidirectional(Node start) {
+        int n = initial.dimension();
+        int[][] tiles = new int[n][n];
+        int[] target = new int[n * n];
+        for (int k = 0; k < n * n; k++) {
+            tiles[k / n][k % n] = (k + 1) % (n * n);
+            target[initial.tileAt(k)] = k;
+        }
+        Board goal = new Board(tiles);
+        Node end = new Node(goal, 0, null, UP, distance(goal, target));
+
+        Search forward = new Search(start, null, true, true);
+        Search backward = new Search(end, target, false, true);
+        forward.other = backward;
+        backward.other = forward;
+        while (!forward.pq.isEmpty() && !backward.pq.isEmpty()) {
+            if (best <= Math.max(forward.pq.minPriority(), backward.pq.minPriority())) break;
+            Search side = forward.pq.size() <= backward.pq.size() ? forward : backward;
+            Node node = side.next();
+            if (node == null) break;
+            side.expand(node);
+        }
+        if (meetF == null) {
+            throw new IllegalStateException("Search space exhausted before reaching the goal!");
+        }
+
+        // the forward moves up to the meeting board, then the backward ones undone
+        path = new byte[best];
+        for (Node node = meetF; node.prev != null; node = node.prev) {
+            path[node.moves - 1] = node.move;
+        }
+        int i = meetF.moves;
+        for (Node node = meetB; node.prev != null; node = node.prev) {
+            path[i++] = (byte) (node.move ^ 1);
+        }
+    }
+
+    // helper function that returns the bytes allocated so far by the current thread; -1 if the
+    // JVM does not report them
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return -1;
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // helper function that returns the direction of a blank moving by offset cells
+    private static byte direction(int offset, int n) {
+        if (offset == -n) return UP;
+        if (offset == n) return DOWN;
+        if (offset == -1) return LEFT;
+        return RIGHT;
+    }
+
+    // helper function that returns the Manhattan distance of board to the board with tiles in
+    // cells target[tile]
+    private static int distance(Board board, int[] target) {
+        int n = board.dimension();
+        int d = 0;
+        for (int k = 0; k < n * n; k++) {
+            int tile = board.tileAt(k);
+            if (tile == 0) continue;
+            d += Math.abs(k / n - target[tile] / n) + Math.abs(k % n - target[tile] % n);
+        }
+        return d;
+    }
+
     // is the initial board solvable? (see below)
     public boolean isSolvable() {
         return sol;
@@ -85,20 +318,61 @@ public class Solver {
     // min number of moves to solve initial board; -1 if unsolvable
     public int moves() {
         if (!this.isSolvable()) return -1;
-        return finalNode.moves;
+        return path.length;
+    }
+
+    // directions of the blank (UP, DOWN, LEFT, RIGHT) in a shortest solution; null if
+    // unsolvable
+    public byte[] directions() {
+        if (!this.isSolvable()) return null;
+        return path.clone();
     }
 
-    // sequence of boards in a shortest solution; null if unsolvable
+    // sequence of boards in a shortest solution, replayed from the initial board as it is
+    // iterated; null if unsolvable
     public Iterable<Board> solution() {
         if (!this.isSolvable()) return null;
-        Stack<Board> path = new Stack<>();
-        Node next = finalNode;
-        path.push(next.board);
-        while (next.prev != null) {
-            path.push(next.prev.board);
-            next = next.prev;
+        return new Iterable<Board>() {
+            public Iterator<Board> iterator() {
+                return new Replay();
+            }
+        };
+    }
+
+    // create helper class that iterates the boards of the solution
+    private class Replay implements Iterator<Board> {
+
+        private Board board = null;
+        private int i = 0;
+
+        public boolean hasNext() {
+            return i <= path.length;
+        }
+
+        public Board next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            if (board == null) board = initial;
+            else {
+                int n = board.dimension();
+                int k = board.blankCell();
+                switch (path[i - 1]) {
+                    case UP:
+                        k -= n;
+                        break;
+                    case DOWN:
+                        k += n;
+                        break;
+                    case LEFT:
+                        k -= 1;
+                        break;
+                    default:
+                        k += 1;
+                }
+                board = board.slide(k);
+            }
+            i++;
+            return board;
         }
-        return path;
     }
 
     // test client
@@ -113,6 +387,8 @@ public class Solver {
             StdOut.println("The puzzle can be solved in " + solver.moves() + " moves!");
             for (Board b : solver.solution()) StdOut.printf(b.toString());
         }
+
+        new Solver(puzzle, Heuristic.LINEAR_CONFLICT, false, StdOut::println);
     }
 
 }
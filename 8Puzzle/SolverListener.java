@@ -0,0 +1,11 @@
+/* *****************************************************************************
+ *  Synopsis: receives the SolverMetrics of a Solver run. Solvers without a
+ *            listener do not collect any metrics.
+ *  Dependencies: -- SolverMetrics.java
+ **************************************************************************** */
+
+public interface SolverListener {
+
+    // called once the solver has finished searching
+    void solved(SolverMetrics metrics);
+}
@@ -0,0 +1,66 @@
+/* *****************************************************************************
+ *  Synopsis: counters and timings of one Solver run, handed to a SolverListener
+ *            when the search has finished: nodes generated and expanded, duplicates
+ *            pruned, peak frontier size, time spent in the heuristic and in the
+ *            priority queue, and bytes allocated by the solving thread.
+ **************************************************************************** */
+
+public class SolverMetrics {
+
+    long generated;
+    long expanded;
+    long duplicates;
+    int peakFrontier;
+    long heuristicNanos;
+    long queueNanos;
+    long totalNanos;
+    long allocatedBytes = -1;
+
+    // number of search nodes created
+    public long generated() {
+        return generated;
+    }
+
+    // number of search nodes expanded
+    public long expanded() {
+        return expanded;
+    }
+
+    // number of neighbors and queued nodes skipped because their board was already expanded
+    public long duplicates() {
+        return duplicates;
+    }
+
+    // largest number of nodes in the open list(s) at any time
+    public int peakFrontier() {
+        return peakFrontier;
+    }
+
+    // time spent computing heuristic values (in seconds)
+    public double heuristicTime() {
+        return heuristicNanos / 1e9;
+    }
+
+    // time spent inserting into and removing from the open list(s) (in seconds)
+    public double queueTime() {
+        return queueNanos / 1e9;
+    }
+
+    // time of the whole solve (in seconds)
+    public double totalTime() {
+        return totalNanos / 1e9;
+    }
+
+    // bytes allocated by the solving thread; -1 if the JVM does not report it
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    // string representation of the metrics
+    public String toString() {
+        return String.format("generated=%d expanded=%d duplicates=%d peakFrontier=%d "
+                                     + "heuristic=%.3fs queue=%.3fs total=%.3fs allocated=%d",
+                             generated, expanded, duplicates, peakFrontier, heuristicTime(),
+                             queueTime(), totalTime(), allocatedBytes);
+    }
+}
@@ -0,0 +1,92 @@
+/* *****************************************************************************
+ *  Synopsis: tables of the walking distance heuristic for n <= 4. A board is
+ *            abstracted to the n-by-n matrix counting, for every row, how many of its
+ *            tiles belong to each goal row; a vertical move carries one tile to the
+ *            row of the blank. The least number of such moves to the goal matrix is
+ *            computed once per dimension by breadth-first search. The same table
+ *            serves columns, by symmetry of the goal board.
+ *            Matrices are packed into a long with 3 bits per count.
+ **************************************************************************** */
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+class WalkingDistance {
+
+    // largest dimension whose count matrices fit into a long
+    static final int MAX_DIMENSION = 4;
+
+    private WalkingDistance() { }
+
+    // create helper class that holds the tables, so that they are only built on the first
+    // lookup (and not when Board packs its count matrices)
+    private static class Tables {
+
+        private static final long[][] KEYS = new long[MAX_DIMENSION + 1][];
+        private static final byte[][] DISTANCES = new byte[MAX_DIMENSION + 1][];
+
+        static {
+            for (int n = 1; n <= MAX_DIMENSION; n++) build(n);
+        }
+    }
+
+    // least number of moves from the count matrix key to the goal matrix
+    static int lookup(int n, long key) {
+        return Tables.DISTANCES[n][Arrays.binarySearch(Tables.KEYS[n], key)];
+    }
+
+    // bit offset of the count of tiles in line whose goal line is goal
+    static int shift(int n, int line, int goal) {
+        return 3 * (line * n + goal);
+    }
+
+    // helper function that runs the BFS from the goal matrix and stores the sorted keys
+    private static void build(int n) {
+        long goal = 0L;
+        for (int i = 0; i < n; i++) goal += (long) (i == n - 1 ? n - 1 : n) << shift(n, i, i);
+
+        Map<Long, Integer> dist = new HashMap<>();
+        ArrayDeque<Long> queue = new ArrayDeque<>();
+        dist.put(goal, 0);
+        queue.add(goal);
+        while (!queue.isEmpty()) {
+            long key = queue.poll();
+            int d = dist.get(key);
+
+            // the blank's line is the one holding n - 1 tiles
+            int blank = 0;
+            for (int line = 0; line < n; line++) {
+                int sum = 0;
+                for (int g = 0; g < n; g++) sum += count(key, n, line, g);
+                if (sum == n - 1) blank = line;
+            }
+            for (int line = blank - 1; line <= blank + 1; line += 2) {
+                if (line < 0 || line >= n) continue;
+                for (int g = 0; g < n; g++) {
+                    if (count(key, n, line, g) == 0) continue;
+                    long next = key - (1L << shift(n, line, g)) + (1L << shift(n, blank, g));
+                    if (!dist.containsKey(next)) {
+                        dist.put(next, d + 1);
+                        queue.add(next);
+                    }
+                }
+            }
+        }
+
+        long[] keys = new long[dist.size()];
+        int i = 0;
+        for (long key : dist.keySet()) keys[i++] = key;
+        Arrays.sort(keys);
+        byte[] distances = new byte[keys.length];
+        for (i = 0; i < keys.length; i++) distances[i] = (byte) (int) dist.get(keys[i]);
+        Tables.KEYS[n] = keys;
+        Tables.DISTANCES[n] = distances;
+    }
+
+    // helper function that returns the count of tiles in line whose goal line is g
+    private static int count(long key, int n, int line, int g) {
+        return (int) (key >>> shift(n, line, g)) & 7;
+    }
+}
@@ -1,6 +1,17 @@
 /* *****************************************************************************
  *  Synopsis: Kd-tree that stores 2D points. Contains all methods of PointSET,
  *            but is much faster.
+ *            Points given to the constructor are bulk-loaded into a balanced static
+ *            tree kept in two flat arrays of coordinates: the subtree of the range
+ *            [lo, hi) has its root at mid = (lo + hi) / 2 (the median by x, or by y
+ *            on odd levels, ties broken by the other coordinate), its left subtree
+ *            in [lo, mid) and its right one in (mid, hi). There are no node objects
+ *            and the bounding boxes are passed down during queries. Points inserted
+ *            later go into a dynamic tree of nodes on top of the static one.
+ *            The static tree can be built in parallel: after the median of a range is
+ *            selected, its two halves are disjoint and are built as fork/join tasks
+ *            down to a cutoff size. The median of a range does not depend on the order
+ *            in which ranges are built, so the tree is the same as a sequential build.
  **************************************************************************** */
 
 import edu.princeton.cs.algs4.In;
@@ -13,7 +24,10 @@ import edu.princeton.cs.algs4.StdRandom;
 import edu.princeton.cs.algs4.Stopwatch;
 
 import java.awt.Color;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class KdTree {
 
@@ -33,8 +47,14 @@ public class KdTree {
         }
     }
 
+    // ranges of at most CUTOFF points are built sequentially
+    private static final int CUTOFF = 1 << 13;
+
     private Node root;
 
+    // static tree: coordinates of the bulk-loaded points in implicit tree order
+    private final double[] xs, ys;
+
     // new comparator for comparison wrt x-coordinate
     private Comparator<Point2D> byX = new Comparator<Point2D>() {
         public int compare(Point2D o1, Point2D o2) {
@@ -49,16 +69,201 @@ public class KdTree {
     // construct an empty set of points
     public KdTree() {
         root = null;
+        xs = new double[0];
+        ys = new double[0];
+    }
+
+    // construct the set of the given points (duplicates are dropped), as a balanced tree
+    public KdTree(Point2D[] points) {
+        this(points, 1);
+    }
+
+    // construct the set of the given points (duplicates are dropped), as a balanced tree built
+    // by parallelism threads
+    public KdTree(Point2D[] points, int parallelism) {
+        if (points == null) throw new IllegalArgumentException("No input provided!");
+        if (parallelism < 1) throw new IllegalArgumentException("Need at least one thread!");
+        double[] x = new double[points.length];
+        double[] y = new double[points.length];
+        for (int i = 0; i < points.length; i++) {
+            if (points[i] == null) throw new IllegalArgumentException("No point may be null!");
+            x[i] = points[i].x();
+            y[i] = points[i].y();
+        }
+        int m = dedupe(x, y);
+        xs = Arrays.copyOf(x, m);
+        ys = Arrays.copyOf(y, m);
+        build(m, parallelism);
+    }
+
+    // construct the set of the points (xs[i], ys[i]) (duplicates are dropped), as a balanced
+    // tree; the arrays are not modified
+    public KdTree(double[] xs, double[] ys) {
+        this(xs, ys, 1);
+    }
+
+    // construct the set of the points (xs[i], ys[i]) (duplicates are dropped), as a balanced
+    // tree built by parallelism threads; the arrays are not modified
+    public KdTree(double[] xs, double[] ys, int parallelism) {
+        if (xs == null || ys == null) throw new IllegalArgumentException("No input provided!");
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("xs and ys must have the same length!");
+        }
+        if (parallelism < 1) throw new IllegalArgumentException("Need at least one thread!");
+        double[] x = xs.clone();
+        double[] y = ys.clone();
+        for (int i = 0; i < x.length; i++) {
+            if (!Double.isFinite(x[i]) || !Double.isFinite(y[i])) {
+                throw new IllegalArgumentException("Coordinates must be finite!");
+            }
+            // as in Point2D, -0.0 is 0.0
+            x[i] += 0.0;
+            y[i] += 0.0;
+        }
+        int m = dedupe(x, y);
+        this.xs = m == x.length ? x : Arrays.copyOf(x, m);
+        this.ys = m == y.length ? y : Arrays.copyOf(y, m);
+        build(m, parallelism);
+    }
+
+    // helper function that moves the distinct points of x[], y[] to the front (in their
+    // original order) using a hash table of indices; returns their number
+    private static int dedupe(double[] x, double[] y) {
+        int cap = 16;
+        while (cap < 2 * x.length) cap <<= 1;
+        int[] table = new int[cap];
+        Arrays.fill(table, -1);
+        int m = 0;
+        for (int i = 0; i < x.length; i++) {
+            long h = Double.doubleToLongBits(x[i]) * 0x9E3779B97F4A7C15L
+                    + Double.doubleToLongBits(y[i]);
+            int slot = (int) ((h * 0xC2B2AE3D27D4EB4FL) >>> 40) & (cap - 1);
+            boolean seen = false;
+            for (; table[slot] >= 0; slot = (slot + 1) & (cap - 1)) {
+                int j = table[slot];
+                if (x[j] == x[i] && y[j] == y[i]) {
+                    seen = true;
+                    break;
+                }
+            }
+            if (seen) continue;
+            x[m] = x[i];
+            y[m] = y[i];
+            table[slot] = m++;
+        }
+        return m;
+    }
+
+    // helper function that arranges the m points as a balanced tree, using parallelism threads
+    private void build(int m, int parallelism) {
+        if (parallelism == 1 || m <= CUTOFF) {
+            build(0, m, 0);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new Build(0, m, 0));
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    // create helper class for the task that builds the subtree [lo, hi) of level
+    private class Build extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int lo, hi, level;
+
+        public Build(int lo, int hi, int level) {
+            this.lo = lo;
+            this.hi = hi;
+            this.level = level;
+        }
+
+        protected void compute() {
+            if (hi - lo <= CUTOFF) {
+                build(lo, hi, level);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi, mid, level);
+            invokeAll(new Build(lo, mid, level + 1), new Build(mid + 1, hi, level + 1));
+        }
+    }
+
+    // helper function that arranges the points in [lo, hi) as a balanced subtree of level
+    private void build(int lo, int hi, int level) {
+        if (hi - lo <= 1) return;
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi, mid, level);
+        build(lo, mid, level + 1);
+        build(mid + 1, hi, level + 1);
+    }
+
+    // helper function that rearranges [lo, hi) so that position k holds the point of rank
+    // k - lo in the order of level, with smaller points before it and larger ones after
+    // (quickselect with median-of-three pivots)
+    private void select(int lo, int hi, int k, int level) {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            int a = lo, b = mid, c = hi - 1;
+            int pivot = less(a, b, level)
+                    ? (less(b, c, level) ? b : less(a, c, level) ? c : a)
+                    : (less(a, c, level) ? a : less(b, c, level) ? c : b);
+            swap(lo, pivot);
+
+            int i = lo, j = hi;
+            while (true) {
+                while (less(++i, lo, level)) if (i == hi - 1) break;
+                while (less(lo, --j, level)) if (j == lo) break;
+                if (i >= j) break;
+                swap(i, j);
+            }
+            swap(lo, j);
+
+            if (j == k) return;
+            if (j < k) lo = j + 1;
+            else hi = j;
+        }
+    }
+
+    // helper function: is point i smaller than point j in the order of level (by x then y on
+    // even levels, by y then x on odd ones)?
+    private boolean less(int i, int j, int level) {
+        if (level % 2 == 0) return xs[i] < xs[j] || xs[i] == xs[j] && ys[i] < ys[j];
+        return ys[i] < ys[j] || ys[i] == ys[j] && xs[i] < xs[j];
+    }
+
+    // helper function that returns the sign of the point (x, y) compared to point i in the
+    // order of level
+    private int compare(double x, double y, int i, int level) {
+        if (level % 2 == 0) {
+            if (x != xs[i]) return x < xs[i] ? -1 : 1;
+            return y < ys[i] ? -1 : y > ys[i] ? 1 : 0;
+        }
+        if (y != ys[i]) return y < ys[i] ? -1 : 1;
+        return x < xs[i] ? -1 : x > xs[i] ? 1 : 0;
+    }
+
+    private void swap(int i, int j) {
+        double t = xs[i];
+        xs[i] = xs[j];
+        xs[j] = t;
+        t = ys[i];
+        ys[i] = ys[j];
+        ys[j] = t;
     }
 
     // is the set empty?
     public boolean isEmpty() {
-        return root == null;
+        return xs.length == 0 && root == null;
     }
 
     // number of points in the set
     public int size() {
-        return size(root);
+        return xs.length + size(root);
     }
 
     private int size(Node x) {
@@ -69,6 +274,7 @@ public class KdTree {
     // add the point to the set (if it is not already in the set)
     public void insert(Point2D p) {
         if (p == null) throw new IllegalArgumentException("No input provided!");
+        if (contains(0, xs.length, p.x(), p.y())) return;
         root = insert(root, p, new RectHV(0, 0, 1, 1), 0);
     }
 
@@ -123,7 +329,19 @@ public class KdTree {
     // does the set contain point p?
     public boolean contains(Point2D p) {
         if (p == null) throw new IllegalArgumentException("No input provided!");
-        return contains(root, p);
+        return contains(0, xs.length, p.x(), p.y()) || contains(root, p);
+    }
+
+    // helper function: does the static tree contain (x, y)?
+    private boolean contains(int lo, int hi, double x, double y) {
+        for (int level = 0; lo < hi; level++) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(x, y, mid, level);
+            if (cmp == 0) return true;
+            if (cmp < 0) hi = mid;
+            else lo = mid + 1;
+        }
+        return false;
     }
 
     private boolean contains(Node node, Point2D p) {
@@ -145,9 +363,33 @@ public class KdTree {
 
     // draw all points to standard draw
     public void draw() {
+        draw(0, xs.length, 0, 0, 0, 1, 1);
         draw(root);
     }
 
+    // helper function that draws the static subtree [lo, hi) of level inside the given box
+    private void draw(int lo, int hi, int level, double xmin, double ymin, double xmax,
+                      double ymax) {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        double x = xs[mid];
+        double y = ys[mid];
+        StdDraw.setPenColor(Color.black);
+        StdDraw.point(x, y);
+        if (level % 2 == 0) {
+            StdDraw.setPenColor(Color.red);
+            StdDraw.line(x, ymin, x, ymax);
+            draw(lo, mid, level + 1, xmin, ymin, x, ymax);
+            draw(mid + 1, hi, level + 1, x, ymin, xmax, ymax);
+        }
+        else {
+            StdDraw.setPenColor(Color.blue);
+            StdDraw.line(xmin, y, xmax, y);
+            draw(lo, mid, level + 1, xmin, ymin, xmax, y);
+            draw(mid + 1, hi, level + 1, xmin, y, xmax, ymax);
+        }
+    }
+
     private void draw(Node node) {
         if (node == null) return;
 
@@ -173,10 +415,33 @@ public class KdTree {
         if (rect == null) throw new IllegalArgumentException("No input provided!");
 
         Queue<Point2D> q = new Queue<>();
+        range(0, xs.length, 0, rect, q);
         range(root, rect, q);
         return q;
     }
 
+    // helper function that adds the points of the static subtree [lo, hi) of level inside
+    // rect to q; only subtrees on the side of the splitting line that meets rect are visited
+    private void range(int lo, int hi, int level, RectHV rect, Queue<Point2D> q) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double x = xs[mid];
+            double y = ys[mid];
+            if (x >= rect.xmin() && x <= rect.xmax() && y >= rect.ymin() && y <= rect.ymax()) {
+                q.enqueue(new Point2D(x, y));
+            }
+            double split = level % 2 == 0 ? x : y;
+            double min = level % 2 == 0 ? rect.xmin() : rect.ymin();
+            double max = level % 2 == 0 ? rect.xmax() : rect.ymax();
+            boolean left = min <= split;
+            boolean right = max >= split;
+            if (left && right) range(lo, mid, level + 1, rect, q);
+            if (right) lo = mid + 1;
+            else hi = mid;
+            level++;
+        }
+    }
+
     private void range(Node node, RectHV rect, Queue<Point2D> q) {
         if (node == null) return;
 
@@ -190,8 +455,71 @@ public class KdTree {
     // a nearest neighbor in the set to point p; null if the set is empty
     public Point2D nearest(Point2D p) {
         if (p == null) throw new IllegalArgumentException("No input provided!");
-        if (root == null) return null;
-        return nearest(root, p, root.point);
+        if (isEmpty()) return null;
+        Point2D champ = null;
+        if (xs.length > 0) {
+            Nearest search = new Nearest(p.x(), p.y());
+            search.search(0, xs.length, 0, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                          Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+            champ = new Point2D(xs[search.best], ys[search.best]);
+        }
+        if (root == null) return champ;
+        return nearest(root, p, champ == null ? root.point : champ);
+    }
+
+    // create helper class for a nearest neighbour search in the static tree: the query point
+    // and the closest point found so far
+    private class Nearest {
+
+        private final double px, py;
+        private int best = -1;
+        private double dist = Double.POSITIVE_INFINITY;
+
+        public Nearest(double px, double py) {
+            this.px = px;
+            this.py = py;
+        }
+
+        // search the subtree [lo, hi) of level whose points lie in the given box
+        private void search(int lo, int hi, int level, double xmin, double ymin, double xmax,
+                            double ymax) {
+            if (lo >= hi) return;
+            double dx = px < xmin ? xmin - px : px > xmax ? px - xmax : 0.0;
+            double dy = py < ymin ? ymin - py : py > ymax ? py - ymax : 0.0;
+            if (dx * dx + dy * dy >= dist) return;
+
+            int mid = (lo + hi) >>> 1;
+            double x = xs[mid];
+            double y = ys[mid];
+            double d = (px - x) * (px - x) + (py - y) * (py - y);
+            if (d < dist) {
+                dist = d;
+                best = mid;
+            }
+
+            // the side of the query point first
+            boolean leftFirst = compare(px, py, mid, level) <= 0;
+            if (level % 2 == 0) {
+                if (leftFirst) {
+                    search(lo, mid, level + 1, xmin, ymin, x, ymax);
+                    search(mid + 1, hi, level + 1, x, ymin, xmax, ymax);
+                }
+                else {
+                    search(mid + 1, hi, level + 1, x, ymin, xmax, ymax);
+                    search(lo, mid, level + 1, xmin, ymin, x, ymax);
+                }
+            }
+            else {
+                if (leftFirst) {
+                    search(lo, mid, level + 1, xmin, ymin, xmax, y);
+                    search(mid + 1, hi, level + 1, xmin, y, xmax, ymax);
+                }
+                else {
+                    search(mid + 1, hi, level + 1, xmin, y, xmax, ymax);
+                    search(lo, mid, level + 1, xmin, ymin, xmax, y);
+                }
+            }
+        }
     }
 
     private Point2D nearest(Node node, Point2D p, Point2D champ) {
@@ -230,21 +558,29 @@ public class KdTree {
         return champ;
     }
 
-    // unit testing of the methods
+    // unit testing of the methods: filename [size of the parallel build benchmark]
     public static void main(String[] args) {
         String filename = args[0];
         In in = new In(filename);
         PointSET brute = new PointSET();
-        KdTree kdtree = new KdTree();
 
         StdOut.println("Building...");
+        double[] xs = new double[16];
+        double[] ys = new double[16];
+        int m = 0;
         while (!in.isEmpty()) {
-            double x = in.readDouble();
-            double y = in.readDouble();
-            Point2D p = new Point2D(x, y);
-            kdtree.insert(p);
-            brute.insert(p);
+            if (m == xs.length) {
+                xs = Arrays.copyOf(xs, 2 * m);
+                ys = Arrays.copyOf(ys, 2 * m);
+            }
+            xs[m] = in.readDouble();
+            ys[m] = in.readDouble();
+            brute.insert(new Point2D(xs[m], ys[m]));
+            m++;
         }
+        Stopwatch build = new Stopwatch();
+        KdTree kdtree = new KdTree(Arrays.copyOf(xs, m), Arrays.copyOf(ys, m));
+        StdOut.println("Built " + kdtree.size() + " points in " + build.elapsedTime() + "s");
 
         for (int n = 1; n < 8; n++) {
             int N = (int) Math.pow(10, n);
@@ -272,5 +608,28 @@ public class KdTree {
             // StdOut.println("Brute force: " + bt);
             StdOut.println("KdTree: " + kt);
         }
+
+        // if a size is given, build that many random points with 1, 2, 4, ... threads; all
+        // builds give the same tree
+        if (args.length < 2) return;
+        int N = Integer.parseInt(args[1]);
+        double[] rx = new double[N];
+        double[] ry = new double[N];
+        for (int i = 0; i < N; i++) {
+            rx[i] = StdRandom.uniformDouble(0, 1);
+            ry[i] = StdRandom.uniformDouble(0, 1);
+        }
+        KdTree first = null;
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int p = 1; p <= cores; p *= 2) {
+            Stopwatch sw = new Stopwatch();
+            KdTree tree = new KdTree(rx, ry, p);
+            double t = sw.elapsedTime();
+            if (first == null) first = tree;
+            else if (!Arrays.equals(first.xs, tree.xs) || !Arrays.equals(first.ys, tree.ys)) {
+                throw new IllegalStateException("Parallel build differs!");
+            }
+            StdOut.printf("Build of %d points with %2d threads: %.3fs%n", N, p, t);
+        }
     }
 }
@@ -0,0 +1,10 @@
+/* *****************************************************************************
+ *  Synopsis: callback of PercolationEngine (and Percolation) that is notified after
+ *            every site or bond that is opened, with the live cluster statistics.
+ **************************************************************************** */
+
+public interface ClusterListener {
+
+    // a site or bond was opened; stats are those after the opening (and change with the next)
+    void opened(ClusterStats stats);
+}
@@ -0,0 +1,84 @@
+/* *****************************************************************************
+ *  Synopsis: statistics of the clusters of a percolation system: the number of
+ *            clusters, the size of the largest one, the number of clusters of each
+ *            size and the number of sites in clusters that connect the top and the
+ *            bottom. Kept up to date by PercolationEngine in O(1) per new cluster and
+ *            per merge of two clusters; snapshot() copies the current state.
+ **************************************************************************** */
+
+import java.util.Arrays;
+
+public class ClusterStats {
+
+    private final int[] sizes;
+    private int clusters;
+    private int largest;
+    private long spanning;
+
+    // statistics for a system of at most sites sites, without clusters
+    ClusterStats(int sites) {
+        sizes = new int[sites + 1];
+    }
+
+    private ClusterStats(ClusterStats that) {
+        sizes = that.sizes.clone();
+        clusters = that.clusters;
+        largest = that.largest;
+        spanning = that.spanning;
+    }
+
+    // forget all clusters
+    void reset() {
+        Arrays.fill(sizes, 0);
+        clusters = 0;
+        largest = 0;
+        spanning = 0;
+    }
+
+    // count a new cluster of the given size; spans tells whether it connects top and bottom
+    void add(int size, boolean spans) {
+        sizes[size]++;
+        clusters++;
+        largest = Math.max(largest, size);
+        if (spans) spanning += size;
+    }
+
+    // count the merge of a cluster of size a with one of size b; spansA and spansB tell
+    // whether they connected top and bottom, spans whether the merged cluster does
+    void merge(int a, boolean spansA, int b, boolean spansB, boolean spans) {
+        sizes[a]--;
+        sizes[b]--;
+        sizes[a + b]++;
+        clusters--;
+        largest = Math.max(largest, a + b);
+        if (spansA) spanning -= a;
+        if (spansB) spanning -= b;
+        if (spans) spanning += a + b;
+    }
+
+    // a copy of the current statistics
+    public ClusterStats snapshot() {
+        return new ClusterStats(this);
+    }
+
+    // number of clusters
+    public int clusters() {
+        return clusters;
+    }
+
+    // number of sites in the largest cluster
+    public int largest() {
+        return largest;
+    }
+
+    // number of clusters of the given size
+    public int clustersOfSize(int size) {
+        if (size < 1 || size >= sizes.length) return 0;
+        return sizes[size];
+    }
+
+    // number of sites in clusters that connect the top and the bottom (0 if none does)
+    public long spanningSize() {
+        return spanning;
+    }
+}
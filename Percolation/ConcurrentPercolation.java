@@ -0,0 +1,211 @@
+/* *****************************************************************************
+ *  Synopsis: an n-by-n percolation grid whose sites may be opened by many threads
+ *            at once. Open sites are an atomic bitset; clusters are a lock-free
+ *            union-find (Jayanti-Tarjan): roots are linked by CAS, the root of lower
+ *            (hashed) priority below the other one, and find splits paths by CAS.
+ *            Every root carries top/bottom flags as in Percolation. Flags only grow:
+ *            whoever links a root below another one, or opens a site, ors its flags
+ *            into the current root and repeats while that root has been linked below
+ *            yet another one in the meantime, so no flag is lost. percolates() is a
+ *            volatile flag and may be polled from any thread; isFull() reflects all
+ *            opens that have returned.
+ *  Dependencies: -- Percolation.java
+ **************************************************************************** */
+
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConcurrentPercolation {
+
+    private static final byte TOP = 1, BOTTOM = 2;
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle BYTES = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final long[] open;
+    private final int[] parent;
+    private final byte[] flags;
+    private final int N;
+    private final AtomicInteger counter = new AtomicInteger();
+    private volatile boolean percolates;
+
+    // creates n-by-n grid, with all sites initially blocked
+    public ConcurrentPercolation(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be greater than 0!");
+        }
+        if ((long) n * n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("n is too large!");
+        }
+        N = n;
+        open = new long[(n * n + 63) >>> 6];
+        parent = new int[n * n];
+        flags = new byte[n * n];
+        for (int i = 0; i < parent.length; i++) parent[i] = i;
+    }
+
+    // opens the site (row, col) if it is not open already; safe to call from any thread
+    public void open(int row, int col) {
+        validate(row, col);
+        int i = (row - 1) * N + col - 1;
+        if (isOpenSite(i)) return;
+
+        // flags first, so that whoever links i below another root sees them
+        byte f = (byte) ((row == 1 ? TOP : 0) | (row == N ? BOTTOM : 0));
+        if (f != 0) BYTES.getAndBitwiseOr(flags, i, f);
+        long bit = 1L << i;
+        if (((long) LONGS.getAndBitwiseOr(open, i >>> 6, bit) & bit) != 0) return;
+        counter.incrementAndGet();
+        if (f == (TOP | BOTTOM)) percolates = true;
+
+        if (row > 1 && isOpenSite(i - N)) union(i, i - N);
+        if (row < N && isOpenSite(i + N)) union(i, i + N);
+        if (col > 1 && isOpenSite(i - 1)) union(i, i - 1);
+        if (col < N && isOpenSite(i + 1)) union(i, i + 1);
+    }
+
+    // helper function that merges the clusters of p and q
+    private void union(int p, int q) {
+        while (true) {
+            int a = find(p);
+            int b = find(q);
+            if (a == b) return;
+            if (before(b, a)) {
+                int t = a;
+                a = b;
+                b = t;
+            }
+            // link a below b, then hand its flags on to the root above it
+            if (INTS.compareAndSet(parent, a, a, b)) {
+                propagate((byte) BYTES.getVolatile(flags, a), b);
+                return;
+            }
+        }
+    }
+
+    // helper function: is root a of lower priority than root b? (a hash of the index, so
+    // that linking behaves like linking by random order)
+    private static boolean before(int a, int b) {
+        int ha = (a * 0x9E3779B9) ^ (a >>> 16);
+        int hb = (b * 0x9E3779B9) ^ (b >>> 16);
+        return ha < hb || ha == hb && a < b;
+    }
+
+    // helper function that ors f into the flags of the root of p; the root is looked up
+    // again if it was linked below another root before the flags arrived
+    private void propagate(byte f, int p) {
+        if (f == 0) return;
+        while (true) {
+            int r = find(p);
+            byte g = (byte) ((byte) BYTES.getAndBitwiseOr(flags, r, f) | f);
+            if (g == (TOP | BOTTOM)) percolates = true;
+            if ((int) INTS.getVolatile(parent, r) == r) return;
+            p = r;
+        }
+    }
+
+    // helper function that returns the root of p, splitting the path on the way
+    private int find(int p) {
+        while (true) {
+            int q = (int) INTS.getVolatile(parent, p);
+            if (q == p) return p;
+            int r = (int) INTS.getVolatile(parent, q);
+            if (q != r) INTS.compareAndSet(parent, p, q, r);
+            p = q;
+        }
+    }
+
+    // helper function: is site i = (row - 1) * n + (col - 1) open?
+    private boolean isOpenSite(int i) {
+        return ((long) LONGS.getVolatile(open, i >>> 6) & 1L << i) != 0;
+    }
+
+    // is the site (row, col) open?
+    public boolean isOpen(int row, int col) {
+        validate(row, col);
+        return isOpenSite((row - 1) * N + col - 1);
+    }
+
+    // is the site (row, col) full?
+    public boolean isFull(int row, int col) {
+        validate(row, col);
+        int i = (row - 1) * N + col - 1;
+        return isOpenSite(i) && ((byte) BYTES.getVolatile(flags, find(i)) & TOP) != 0;
+    }
+
+    // returns the number of open sites
+    public int numberOfOpenSites() {
+        return counter.get();
+    }
+
+    // does the system percolate?
+    public boolean percolates() {
+        return percolates;
+    }
+
+    // helper function that checks that (row, col) is on the grid
+    private void validate(int row, int col) {
+        if (row > N || row < 1 || col > N || col < 1) {
+            throw new IllegalArgumentException("row/col index from 1 to n!");
+        }
+    }
+
+    // test client: n [threads]; opens the sites of a random permutation from several threads
+    // and compares with Percolation opening the same sites
+    public static void main(String[] args) throws InterruptedException {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                                      : Runtime.getRuntime().availableProcessors();
+        int[] sites = new int[n * n];
+        for (int i = 0; i < sites.length; i++) sites[i] = i;
+        StdRandom.shuffle(sites);
+        int count = (int) (0.6 * sites.length);
+
+        ConcurrentPercolation test = new ConcurrentPercolation(n);
+        Thread[] pool = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int lo = (int) ((long) count * t / threads);
+            int hi = (int) ((long) count * (t + 1) / threads);
+            pool[t] = new Thread(() -> {
+                for (int k = lo; k < hi; k++) test.open(sites[k] / n + 1, sites[k] % n + 1);
+            });
+            pool[t].start();
+        }
+        while (!test.percolates() && isAlive(pool)) Thread.onSpinWait();
+        int seen = test.numberOfOpenSites();
+        for (Thread t : pool) t.join();
+        double time = (System.nanoTime() - start) / 1e9;
+
+        Percolation check = new Percolation(n);
+        for (int k = 0; k < count; k++) check.openSite(sites[k]);
+        for (int row = 1; row <= n; row++) {
+            for (int col = 1; col <= n; col++) {
+                if (test.isFull(row, col) != check.isFull(row, col)) {
+                    throw new IllegalStateException("isFull differs at " + row + ", " + col);
+                }
+            }
+        }
+        if (test.percolates() != check.percolates()) {
+            throw new IllegalStateException("percolates differs!");
+        }
+        StdOut.printf("%d sites opened by %d threads in %.3fs, percolates: %b", count, threads,
+                      time, test.percolates());
+        if (test.percolates()) StdOut.printf(" (seen with %d sites open)", seen);
+        StdOut.println();
+    }
+
+    // helper function: is one of the threads still running?
+    private static boolean isAlive(Thread[] pool) {
+        for (Thread t : pool) {
+            if (t.isAlive()) return true;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,124 @@
+/* *****************************************************************************
+ *  Synopsis: union-find over the sites of a grid (plus virtual sites), backed by a
+ *            single int array: parent[p] is the parent of p, or minus the size of
+ *            the component if p is a root. Union by size and path halving keep the
+ *            trees flat, so that find takes amortised inverse-Ackermann time.
+ *            main() benchmarks it against algs4's WeightedQuickUnionUF.
+ **************************************************************************** */
+
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+import edu.princeton.cs.algs4.Stopwatch;
+import edu.princeton.cs.algs4.WeightedQuickUnionUF;
+
+import java.util.Arrays;
+
+public class GridUnionFind {
+
+    private final int[] parent;
+
+    // n sites 0..n-1, each in its own component
+    public GridUnionFind(int n) {
+        if (n < 0) throw new IllegalArgumentException("n must not be negative!");
+        parent = new int[n];
+        Arrays.fill(parent, -1);
+    }
+
+    // put every site back into its own component
+    void reset() {
+        Arrays.fill(parent, -1);
+    }
+
+    // root of the component containing p (halving the path on the way)
+    public int find(int p) {
+        int q = parent[p];
+        while (q >= 0) {
+            int r = parent[q];
+            if (r < 0) return q;
+            parent[p] = r;
+            p = r;
+            q = parent[p];
+        }
+        return p;
+    }
+
+    // are p and q in the same component?
+    public boolean connected(int p, int q) {
+        return find(p) == find(q);
+    }
+
+    // number of sites in the component whose root is root
+    public int size(int root) {
+        return -parent[root];
+    }
+
+    // merge the components containing p and q; returns the root of the merged component
+    public int union(int p, int q) {
+        int i = find(p);
+        int j = find(q);
+        if (i == j) return i;
+        if (parent[i] > parent[j]) {
+            int t = i;
+            i = j;
+            j = t;
+        }
+        parent[i] += parent[j];
+        parent[j] = i;
+        return i;
+    }
+
+    // benchmark: open the sites of an n-by-n grid in random order, union them with their
+    // open neighbours and check for percolation after every site
+    public static void main(String[] args) {
+        int max = args.length > 0 ? Integer.parseInt(args[0]) : 8192;
+        for (int n = 64; n <= max; n *= 2) {
+            int[] order = new int[n * n];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            StdRandom.shuffle(order);
+
+            Stopwatch sw = new Stopwatch();
+            GridUnionFind uf = new GridUnionFind(n * n + 2);
+            int steps = run(n, order, uf::union, uf::connected);
+            double t = sw.elapsedTime();
+
+            Stopwatch sw1 = new Stopwatch();
+            WeightedQuickUnionUF wq = new WeightedQuickUnionUF(n * n + 2);
+            int steps1 = run(n, order, (p, q) -> {
+                wq.union(p, q);
+                return 0;
+            }, (p, q) -> wq.find(p) == wq.find(q));
+            double t1 = sw1.elapsedTime();
+
+            if (steps != steps1) throw new IllegalStateException("Results differ!");
+            StdOut.printf("n = %5d: GridUnionFind %.3fs, WeightedQuickUnionUF %.3fs%n", n, t, t1);
+        }
+    }
+
+    // helper interfaces of the benchmark
+    private interface Union {
+        int union(int p, int q);
+    }
+
+    private interface Connected {
+        boolean connected(int p, int q);
+    }
+
+    // helper function that runs the benchmark on one union-find; returns #sites opened
+    private static int run(int n, int[] order, Union uf, Connected c) {
+        int top = n * n;
+        int bottom = n * n + 1;
+        boolean[] open = new boolean[n * n];
+        for (int k = 0; k < order.length; k++) {
+            int i = order[k];
+            open[i] = true;
+            if (i < n) uf.union(top, i);
+            if (i >= n * (n - 1)) uf.union(bottom, i);
+            if (i >= n && open[i - n]) uf.union(i - n, i);
+            if (i < n * (n - 1) && open[i + n]) uf.union(i + n, i);
+            if (i % n > 0 && open[i - 1]) uf.union(i - 1, i);
+            if (i % n < n - 1 && open[i + 1]) uf.union(i + 1, i);
+            if (c.connected(top, bottom)) return k + 1;
+        }
+        return order.length;
+    }
+}
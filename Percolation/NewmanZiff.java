@@ -0,0 +1,296 @@
+/* *****************************************************************************
+ *  Synopsis: estimates the percolation threshold and the observables around it with
+ *            the Newman-Ziff algorithm. Every trial opens all sites of an n-by-n grid
+ *            in random order (one union per open neighbour) and records after how many
+ *            open sites the system percolates and, optionally, the size of the
+ *            largest cluster after every step. This gives the microcanonical averages
+ *            Q_k (k sites open) of one pass per trial; canonical averages Q(p) follow
+ *            by convolution with the binomial distribution:
+ *                Q(p) = sum_k C(N, k) p^k (1 - p)^(N - k) Q_k,  N = n^2.
+ *            Trials run in parallel on a ForkJoinPool as in PercolationStats (each
+ *            thread reuses one grid, trial i uses its own seeded random numbers); every
+ *            thread adds to its own tally, and the tallies are added up at the end.
+ *  Dependencies: -- Percolation.java
+ *                -- PercolationStats.java
+ **************************************************************************** */
+
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class NewmanZiff {
+
+    private final int N;
+    private final int Trials;
+    private final double[] spanning;
+    private final double[] largest;
+    private final double mean, stddev;
+
+    // run trials on an n-by-n grid, recording cluster sizes (with a fresh seed drawn from
+    // StdRandom, on all cores)
+    public NewmanZiff(int n, int trials) {
+        this(n, trials, StdRandom.uniformLong(Long.MAX_VALUE),
+             Runtime.getRuntime().availableProcessors(), true);
+    }
+
+    // run trials on an n-by-n grid, reproducibly for a given seed, using parallelism threads;
+    // the largest cluster is recorded at every occupation only if clusters is true
+    public NewmanZiff(int n, int trials, long seed, int parallelism, boolean clusters) {
+        if (n < 1 || trials < 1) {
+            throw new IllegalArgumentException("n and #trials must be greater than 0!");
+        }
+        if (parallelism < 1) throw new IllegalArgumentException("Need at least one thread!");
+        N = n * n;
+        Trials = trials;
+
+        ConcurrentLinkedQueue<Worker> workers = new ConcurrentLinkedQueue<>();
+        ThreadLocal<Worker> worker = ThreadLocal.withInitial(() -> {
+            Worker w = new Worker(n, clusters);
+            workers.add(w);
+            return w;
+        });
+        int cutoff = Math.max(1, trials / (8 * parallelism));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new Trials(worker, seed, cutoff, 0, trials));
+        }
+        finally {
+            pool.shutdown();
+        }
+        // the tallies hold whole numbers (exact in a double), so their sum does not depend on
+        // which thread ran which trials
+        Tally tally = new Tally(N, clusters);
+        for (Worker w : workers) tally.add(w.tally);
+
+        // spanning[k]: fraction of trials that percolate once k sites are open
+        spanning = new double[N + 1];
+        double sum = 0.0, sumSq = 0.0;
+        long count = 0;
+        for (int k = 0; k <= N; k++) {
+            count += tally.spans[k];
+            spanning[k] = (double) count / trials;
+            double x = (double) k / N;
+            sum += tally.spans[k] * x;
+            sumSq += tally.spans[k] * x * x;
+        }
+        mean = sum / trials;
+        stddev = trials > 1 ? Math.sqrt((sumSq - trials * mean * mean) / (trials - 1))
+                            : Double.NaN;
+
+        // largest[k]: mean size of the largest cluster (as a fraction of all sites)
+        if (clusters) {
+            largest = new double[N + 1];
+            for (int k = 0; k <= N; k++) largest[k] = tally.largest[k] / ((double) trials * N);
+        }
+        else largest = null;
+    }
+
+    // create helper class for the state a thread reuses across trials: the grid, the
+    // permutation of its sites and the tally of the trials it ran
+    private static class Worker {
+
+        private final Percolation grid;
+        private final int[] sites;
+        private final Tally tally;
+
+        public Worker(int n, boolean clusters) {
+            grid = new Percolation(n);
+            sites = new int[n * n];
+            tally = new Tally(n * n, clusters);
+        }
+    }
+
+    // create helper class for the sums of a set of trials: how many percolated first after
+    // k open sites, and the total largest cluster size after k open sites
+    private static class Tally {
+
+        private final long[] spans;
+        private final double[] largest;
+
+        public Tally(int sites, boolean clusters) {
+            spans = new long[sites + 1];
+            largest = clusters ? new double[sites + 1] : null;
+        }
+
+        // helper function that adds the sums of that to this one
+        private Tally add(Tally that) {
+            for (int k = 0; k < spans.length; k++) spans[k] += that.spans[k];
+            if (largest != null) {
+                for (int k = 0; k < largest.length; k++) largest[k] += that.largest[k];
+            }
+            return this;
+        }
+    }
+
+    // create helper class for the task that runs trials lo..hi-1, adding to the tally of the
+    // thread that runs them
+    private static class Trials extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ThreadLocal<Worker> worker;
+        private final long seed;
+        private final int cutoff, lo, hi;
+
+        public Trials(ThreadLocal<Worker> worker, long seed, int cutoff, int lo, int hi) {
+            this.worker = worker;
+            this.seed = seed;
+            this.cutoff = cutoff;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute() {
+            if (hi - lo > cutoff) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Trials(worker, seed, cutoff, lo, mid),
+                          new Trials(worker, seed, cutoff, mid, hi));
+                return;
+            }
+            Worker w = worker.get();
+            for (int i = lo; i < hi; i++) {
+                w.grid.reset();
+                trial(w, PercolationStats.random(seed, i), w.tally);
+            }
+        }
+    }
+
+    // helper function that opens the sites of the blocked grid of w in random order and adds
+    // the observables to tally; stops at percolation unless cluster sizes are recorded
+    private static void trial(Worker w, SplittableRandom random, Tally tally) {
+        Percolation test = w.grid;
+        int[] sites = w.sites;
+        for (int i = 0; i < sites.length; i++) sites[i] = i;
+        int max = 0;
+        boolean percolated = false;
+        for (int k = 0; k < sites.length; k++) {
+            int j = k + random.nextInt(sites.length - k);
+            int site = sites[j];
+            sites[j] = sites[k];
+            sites[k] = site;
+            test.openSite(site);
+
+            if (!percolated && test.percolates()) {
+                percolated = true;
+                tally.spans[k + 1]++;
+                if (tally.largest == null) return;
+            }
+            if (tally.largest != null) {
+                max = Math.max(max, test.clusterSize(site));
+                tally.largest[k + 1] += max;
+            }
+        }
+    }
+
+    // number of sites of the grid
+    public int sites() {
+        return N;
+    }
+
+    // sample mean of percolation threshold
+    public double mean() {
+        return mean;
+    }
+
+    // sample standard deviation of percolation threshold
+    public double stddev() {
+        return stddev;
+    }
+
+    // low endpoint of 95% confidence interval
+    public double confidenceLo() {
+        return mean - 1.96 * stddev / Math.sqrt(Trials);
+    }
+
+    // high endpoint of 95% confidence interval
+    public double confidenceHi() {
+        return mean + 1.96 * stddev / Math.sqrt(Trials);
+    }
+
+    // probability that the system percolates with exactly k open sites (microcanonical)
+    public double spanning(int k) {
+        validate(k);
+        return spanning[k];
+    }
+
+    // mean size of the largest cluster with exactly k open sites, as a fraction of all sites
+    // (microcanonical)
+    public double largestCluster(int k) {
+        validate(k);
+        if (largest == null) throw new IllegalStateException("Clusters not recorded!");
+        return largest[k];
+    }
+
+    // probability that the system percolates when every site is open with probability p
+    public double spanningProbability(double p) {
+        return convolve(spanning, p);
+    }
+
+    // mean size of the largest cluster when every site is open with probability p, as a
+    // fraction of all sites
+    public double largestCluster(double p) {
+        if (largest == null) throw new IllegalStateException("Clusters not recorded!");
+        return convolve(largest, p);
+    }
+
+    // helper function that checks that k is a number of open sites
+    private void validate(int k) {
+        if (k < 0 || k > N) throw new IllegalArgumentException("k must be from 0 to n^2!");
+    }
+
+    // helper function that returns sum_k C(N, k) p^k (1 - p)^(N - k) q[k]; the binomial
+    // weights are built outwards from the mode by their ratios (so that nothing overflows)
+    // and normalised at the end
+    private static double convolve(double[] q, double p) {
+        if (!(p >= 0.0 && p <= 1.0)) throw new IllegalArgumentException("p must be in [0, 1]!");
+        int sites = q.length - 1;
+        if (p == 0.0) return q[0];
+        if (p == 1.0) return q[sites];
+
+        int mode = (int) Math.min(sites, Math.floor((sites + 1) * p));
+        double odds = p / (1.0 - p);
+        double total = 1.0;
+        double sum = q[mode];
+        double w = 1.0;
+        for (int k = mode + 1; k <= sites && w > 0.0; k++) {
+            w *= odds * (sites - k + 1) / k;
+            total += w;
+            sum += w * q[k];
+        }
+        w = 1.0;
+        for (int k = mode - 1; k >= 0 && w > 0.0; k--) {
+            w *= (k + 1) / (odds * (sites - k));
+            total += w;
+            sum += w * q[k];
+        }
+        return sum / total;
+    }
+
+    // test client: n trials [seed [threads]]
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        int trials = Integer.parseInt(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2])
+                                    : StdRandom.uniformLong(Long.MAX_VALUE);
+        int threads = args.length > 3 ? Integer.parseInt(args[3])
+                                      : Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        NewmanZiff nz = new NewmanZiff(n, trials, seed, threads, true);
+        double t = (System.nanoTime() - start) / 1e9;
+        StdOut.printf("mean = %f%n", nz.mean());
+        StdOut.printf("stddev = %f%n", nz.stddev());
+        StdOut.printf("95%% confidence interval = [%f, %f]%n", nz.confidenceLo(),
+                      nz.confidenceHi());
+        for (int i = 50; i <= 70; i += 2) {
+            double p = i / 100.0;
+            StdOut.printf("p = %.2f: spanning %.4f, largest cluster %.4f%n", p,
+                          nz.spanningProbability(p), nz.largestCluster(p));
+        }
+        StdOut.printf("%d threads: %.3fs, %.1f trials/s", threads, t, trials / t);
+    }
+
+}
@@ -0,0 +1,348 @@
+/* *****************************************************************************
+ *  Synopsis: site or bond percolation on any lattice in any dimension. The sites
+ *            of a d-dimensional box are stored in row-major order with one layer of
+ *            padding around each side; padding sites are never open, so the
+ *            neighbours of a site are just the sites at fixed index offsets (the
+ *            lattice's flat strides) and opening a site needs no boundary checks.
+ *            The first coordinate is the direction of percolation: every
+ *            union-find root carries flags for reaching the first and the last layer
+ *            (as in Percolation), which keeps isFull() free of backwash.
+ *            Lattices are given by their neighbour vectors, one per pair of opposite
+ *            neighbours with entries -1..1; see square(), cubic() and triangular().
+ *            In bond mode all sites are present and bonds between neighbours are
+ *            opened instead.
+ *            Cluster statistics (see ClusterStats) are kept up to date on every open
+ *            once trackClusters() or setListener() was called.
+ *  Dependencies: -- ClusterListener.java
+ *                -- ClusterStats.java
+ *                -- GridUnionFind.java
+ **************************************************************************** */
+
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+
+import java.util.Arrays;
+
+public class PercolationEngine {
+
+    private static final byte TOP = 1, BOTTOM = 2;
+
+    private final int[] dims, strides, offsets;
+    private final int rows, size;
+    private final boolean bondMode;
+    private final long[] open, real, bond;
+    private final GridUnionFind id;
+    private final byte[] flags;
+    private int counter;
+    private boolean percolates;
+    private ClusterStats stats;
+    private ClusterListener listener;
+
+    // the n-by-n square lattice (4 neighbours)
+    public static PercolationEngine square(int n, boolean bonds) {
+        return new PercolationEngine(new int[] { n, n }, new int[][] { { 1, 0 }, { 0, 1 } },
+                                     bonds);
+    }
+
+    // the n-by-n-by-n simple cubic lattice (6 neighbours)
+    public static PercolationEngine cubic(int n, boolean bonds) {
+        return new PercolationEngine(new int[] { n, n, n },
+                                     new int[][] { { 1, 0, 0 }, { 0, 1, 0 }, { 0, 0, 1 } },
+                                     bonds);
+    }
+
+    // the n-by-n triangular lattice, as the square lattice with one diagonal (6 neighbours)
+    public static PercolationEngine triangular(int n, boolean bonds) {
+        return new PercolationEngine(new int[] { n, n },
+                                     new int[][] { { 1, 0 }, { 0, 1 }, { 1, -1 } }, bonds);
+    }
+
+    // creates a box of dims[0] x dims[1] x ... sites, all blocked (site mode) or all present
+    // with all bonds blocked (bond mode), where the neighbours of a site x are x + v and x - v
+    // for every vector v of directions
+    public PercolationEngine(int[] dims, int[][] directions, boolean bonds) {
+        if (dims == null || dims.length == 0) throw new IllegalArgumentException("No dims!");
+        if (directions == null || directions.length == 0) {
+            throw new IllegalArgumentException("No directions!");
+        }
+        this.dims = dims.clone();
+        this.strides = new int[dims.length];
+        long padded = 1;
+        for (int k = dims.length - 1; k >= 0; k--) {
+            if (dims[k] <= 0) throw new IllegalArgumentException("dims must be greater than 0!");
+            strides[k] = (int) padded;
+            padded *= dims[k] + 2L;
+            // site indices must fit in an int, and so must bond indices in bond mode
+            if (padded * (bonds ? directions.length : 1) > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Lattice is too large!");
+            }
+        }
+        this.size = (int) padded;
+        this.rows = dims[0];
+
+        // every direction v gives the offsets +v and -v
+        this.offsets = new int[2 * directions.length];
+        for (int m = 0; m < directions.length; m++) {
+            int[] v = directions[m];
+            if (v == null || v.length != dims.length) {
+                throw new IllegalArgumentException("Directions must have dims.length entries!");
+            }
+            int offset = 0;
+            for (int k = 0; k < v.length; k++) {
+                if (v[k] < -1 || v[k] > 1) {
+                    throw new IllegalArgumentException("Direction entries must be -1, 0 or 1!");
+                }
+                offset += v[k] * strides[k];
+            }
+            if (offset == 0) throw new IllegalArgumentException("Directions must not be 0!");
+            offsets[2 * m] = offset;
+            offsets[2 * m + 1] = -offset;
+        }
+
+        this.bondMode = bonds;
+        open = new long[(int) ((size + 63L) >>> 6)];
+        id = new GridUnionFind(size);
+        flags = new byte[size];
+        if (bonds) {
+            real = new long[open.length];
+            for (int k = 0; k < sites(); k++) {
+                int i = site(k);
+                real[i >>> 6] |= 1L << i;
+            }
+            bond = new long[(int) (((long) size * directions.length + 63) >>> 6)];
+        }
+        else {
+            real = null;
+            bond = null;
+        }
+        reset();
+    }
+
+    // blocks all sites (or bonds) again
+    public void reset() {
+        id.reset();
+        Arrays.fill(flags, (byte) 0);
+        counter = 0;
+        percolates = false;
+        if (!bondMode) Arrays.fill(open, 0L);
+        else {
+            System.arraycopy(real, 0, open, 0, open.length);
+            Arrays.fill(bond, 0L);
+            for (int w = 0; w < open.length; w++) {
+                for (long bits = open[w]; bits != 0; bits &= bits - 1) {
+                    int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    flags[i] = layer(i);
+                    if (flags[i] == (TOP | BOTTOM)) percolates = true;
+                }
+            }
+        }
+        if (stats != null) count();
+    }
+
+    // the live cluster statistics, kept up to date from now on
+    public ClusterStats trackClusters() {
+        if (stats == null) {
+            stats = new ClusterStats(sites());
+            count();
+        }
+        return stats;
+    }
+
+    // calls listener after every opened site or bond (null to stop); tracks cluster statistics
+    public void setListener(ClusterListener listener) {
+        this.listener = listener;
+        if (listener != null) trackClusters();
+    }
+
+    // helper function that recounts the cluster statistics from scratch
+    private void count() {
+        stats.reset();
+        for (int w = 0; w < open.length; w++) {
+            for (long bits = open[w]; bits != 0; bits &= bits - 1) {
+                int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                if (id.find(i) == i) stats.add(id.size(i), flags[i] == (TOP | BOTTOM));
+            }
+        }
+    }
+
+    // helper function that returns the flags of the first and last layer for site i
+    private byte layer(int i) {
+        return (byte) ((i < 2 * strides[0] ? TOP : 0) | (i >= rows * strides[0] ? BOTTOM : 0));
+    }
+
+    // index of the site with 0-based coordinates (row, col) of a 2-dimensional lattice
+    public int index(int row, int col) {
+        return (row + 1) * strides[0] + col + 1;
+    }
+
+    // index of the site with 0-based coordinates (x, y, z) of a 3-dimensional lattice
+    public int index(int x, int y, int z) {
+        return (x + 1) * strides[0] + (y + 1) * strides[1] + z + 1;
+    }
+
+    // index of the site with 0-based coordinates x[]
+    public int index(int[] x) {
+        int i = 0;
+        for (int k = 0; k < x.length; k++) i += (x[k] + 1) * strides[k];
+        return i;
+    }
+
+    // index of the k-th site in row-major order of the box without padding
+    // (0 <= k < sites())
+    public int site(int k) {
+        if (dims.length == 2) return (k / dims[1] + 1) * strides[0] + k % dims[1] + 1;
+        int i = 0;
+        for (int d = dims.length - 1; d > 0; d--) {
+            i += (k % dims[d] + 1) * strides[d];
+            k /= dims[d];
+        }
+        return i + (k + 1) * strides[0];
+    }
+
+    // number of sites of the box (without padding)
+    public int sites() {
+        int count = 1;
+        for (int d : dims) count *= d;
+        return count;
+    }
+
+    // number of bonds between sites of the box
+    public long bonds() {
+        long count = 0;
+        int sites = sites();
+        for (int k = 0; k < sites; k++) {
+            int i = site(k);
+            for (int m = 0; m < offsets.length; m += 2) {
+                if (isReal(i + offsets[m])) count++;
+            }
+        }
+        return count;
+    }
+
+    // helper function: is site i a site of the box (and not padding)?
+    private boolean isReal(int i) {
+        if (i < 0 || i >= size) return false;
+        for (int d = dims.length - 1; d >= 0; d--) {
+            int x = i / strides[d] % (dims[d] + 2);
+            if (x == 0 || x > dims[d]) return false;
+        }
+        return true;
+    }
+
+    // the sites are indexed 0..size()-1 (including padding)
+    public int size() {
+        return size;
+    }
+
+    // number of neighbours of a site
+    public int degree() {
+        return offsets.length;
+    }
+
+    // opens site i if it is not open already (site mode); i is not checked
+    public void openSite(int i) {
+        if (bondMode) throw new UnsupportedOperationException("No sites to open in bond mode!");
+        if (isOpenSite(i)) return;
+        open[i >>> 6] |= 1L << i;
+        counter += 1;
+
+        byte f = layer(i);
+        int root = i;
+        if (stats != null) stats.add(1, f == (TOP | BOTTOM));
+        for (int offset : offsets) {
+            int j = i + offset;
+            if ((open[j >>> 6] & 1L << j) != 0) {
+                int r = id.find(j);
+                if (r == root) continue;
+                if (stats != null) merged(root, f, r);
+                f |= flags[r];
+                root = id.union(root, r);
+            }
+        }
+        flags[root] = f;
+        if (f == (TOP | BOTTOM)) percolates = true;
+        if (listener != null) listener.opened(stats);
+    }
+
+    // helper function that counts the merge of the clusters with roots p (flags f) and q
+    private void merged(int p, byte f, int q) {
+        byte g = (byte) (f | flags[q]);
+        stats.merge(id.size(p), f == (TOP | BOTTOM), id.size(q), flags[q] == (TOP | BOTTOM),
+                    g == (TOP | BOTTOM));
+    }
+
+    // opens the bond from site i to its neighbour k (0 <= k < degree()) if it is not open
+    // already and both ends are real sites (bond mode); i is not checked
+    public void openBond(int i, int k) {
+        if (!bondMode) throw new UnsupportedOperationException("No bonds in site mode!");
+        int j = i + offsets[k];
+        if (!isOpenSite(i) || !isOpenSite(j)) return;
+        long b = (long) Math.min(i, j) * (offsets.length / 2) + k / 2;
+        if ((bond[(int) (b >>> 6)] & 1L << b) != 0) return;
+        bond[(int) (b >>> 6)] |= 1L << b;
+        counter += 1;
+
+        int p = id.find(i);
+        int q = id.find(j);
+        if (p != q) {
+            if (stats != null) merged(p, flags[p], q);
+            byte f = (byte) (flags[p] | flags[q]);
+            flags[id.union(p, q)] = f;
+            if (f == (TOP | BOTTOM)) percolates = true;
+        }
+        if (listener != null) listener.opened(stats);
+    }
+
+    // is site i open (site mode) or a real site (bond mode)?
+    public boolean isOpenSite(int i) {
+        return (open[i >>> 6] & 1L << i) != 0;
+    }
+
+    // is site i open and connected to the first layer?
+    public boolean isFullSite(int i) {
+        return isOpenSite(i) && (flags[id.find(i)] & TOP) != 0;
+    }
+
+    // number of sites in the cluster of the open site i
+    public int clusterSize(int i) {
+        return id.size(id.find(i));
+    }
+
+    // number of open sites (site mode) or open bonds (bond mode)
+    public int numberOfOpen() {
+        return counter;
+    }
+
+    // does a cluster connect the first and the last layer?
+    public boolean percolates() {
+        return percolates;
+    }
+
+    // test client: estimate the thresholds of the lattices by opening random sites or bonds
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int trials = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        String[] names = { "square", "triangular", "cubic" };
+        for (String name : names) {
+            for (boolean bonds : new boolean[] { false, true }) {
+                int m = name.equals("cubic") ? Math.max(1, (int) Math.cbrt((double) n * n)) : n;
+                PercolationEngine lattice = name.equals("square") ? square(m, bonds)
+                        : name.equals("cubic") ? cubic(m, bonds) : triangular(m, bonds);
+                double total = bonds ? lattice.bonds() : lattice.sites();
+                double sum = 0.0;
+                for (int t = 0; t < trials; t++) {
+                    lattice.reset();
+                    while (!lattice.percolates()) {
+                        int i = lattice.site(StdRandom.uniformInt(lattice.sites()));
+                        if (!bonds) lattice.openSite(i);
+                        else lattice.openBond(i, StdRandom.uniformInt(lattice.degree()));
+                    }
+                    sum += lattice.numberOfOpen() / total;
+                }
+                StdOut.printf("%-10s %s n = %4d: threshold ~ %.4f%n", name,
+                              bonds ? "bond" : "site", m, sum / trials);
+            }
+        }
+    }
+
+}
@@ -1,66 +1,298 @@
 /* *****************************************************************************
  *  Synopsis: performs Monte Carlo simulation to determine percolation threshold.
  *            Returns mean percolation threshold, stdev and 95% confidence interval.
+ *            Trials run in parallel on a ForkJoinPool: the range of trials is split
+ *            into tasks, every thread reuses one grid for all trials it runs, and
+ *            trial i draws its sites from its own SplittableRandom seeded from
+ *            (seed, i), so the results do not depend on the number of threads or on
+ *            the order in which trials are scheduled.
+ *            Sites are opened in the order of a random permutation that is generated
+ *            lazily by Fisher-Yates, so every step opens a new site with a single
+ *            random number instead of retrying on open sites.
+ *            Thresholds are not stored: every task keeps a running mean and variance
+ *            and the tasks' accumulators are merged on join, so memory does not grow
+ *            with the number of trials. toPrecision() keeps running trials until the
+ *            95% confidence interval is narrow enough.
+ *            Optionally the cluster statistics of every grid are tracked, and the
+ *            largest cluster, the number of clusters and the spanning cluster at the
+ *            threshold are averaged in the same way.
+ *  Dependencies: -- ClusterStats.java
+ *                -- Percolation.java
+ *                -- RunningStats.java
  **************************************************************************** */
 
 import edu.princeton.cs.algs4.StdOut;
 import edu.princeton.cs.algs4.StdRandom;
-import edu.princeton.cs.algs4.StdStats;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class PercolationStats {
 
-    private double[] num;
-    private int Trials;
+    private static final long GAMMA = 0x9E3779B97F4A7C15L;
+    private static final int TASKS = 64;
+    private static final int MIN_TRIALS = 32;
+
+    private final Sums sums;
 
-    // perform independent trials on an n-by-n grid
+    // perform independent trials on an n-by-n grid (with a fresh seed drawn from StdRandom, on
+    // all cores)
     public PercolationStats(int n, int trials) {
+        this(n, trials, StdRandom.uniformLong(Long.MAX_VALUE),
+             Runtime.getRuntime().availableProcessors());
+    }
+
+    // perform independent trials on an n-by-n grid, reproducibly for a given seed, using
+    // parallelism threads
+    public PercolationStats(int n, int trials, long seed, int parallelism) {
+        this(n, trials, seed, parallelism, false);
+    }
+
+    // perform independent trials on an n-by-n grid, reproducibly for a given seed, using
+    // parallelism threads; averages the cluster statistics at the threshold if clusters is true
+    public PercolationStats(int n, int trials, long seed, int parallelism, boolean clusters) {
         if (n < 1 || trials < 1) {
             throw new IllegalArgumentException("n and #trials must be greater than 0!");
         }
-        Trials = trials;
-        num = new double[trials];
-        for (int i = 0; i < trials; i++) {
-            Percolation test = new Percolation(n);
-            while (!test.percolates()) {
-                int rrow = StdRandom.uniformInt(n) + 1;
-                int rcol = StdRandom.uniformInt(n) + 1;
-                if (!test.isOpen(rrow, rcol)) {
-                    test.open(rrow, rcol);
+        if (parallelism < 1) throw new IllegalArgumentException("Need at least one thread!");
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            sums = run(pool, n, seed, clusters, 0, trials);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private PercolationStats(Sums sums) {
+        this.sums = sums;
+    }
+
+    // perform trials on an n-by-n grid until the half-width of the 95% confidence interval is
+    // below epsilon (reproducibly for a given seed, using parallelism threads)
+    public static PercolationStats toPrecision(int n, double epsilon, long seed,
+                                               int parallelism) {
+        if (n < 1) throw new IllegalArgumentException("n must be greater than 0!");
+        if (!(epsilon > 0.0)) throw new IllegalArgumentException("epsilon must be positive!");
+        if (parallelism < 1) throw new IllegalArgumentException("Need at least one thread!");
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            Sums sums = run(pool, n, seed, false, 0, MIN_TRIALS);
+            RunningStats stats = sums.threshold;
+            while (!(stats.halfWidth() < epsilon) && stats.count() < Integer.MAX_VALUE) {
+                // estimate the trials still needed from the current stddev, at most doubling
+                double s = stats.stddev() * 1.96 / epsilon;
+                long needed = s * s < Long.MAX_VALUE ? (long) Math.ceil(s * s) : Long.MAX_VALUE;
+                int done = (int) stats.count();
+                long more = Math.min(Math.max(needed - done, 1), done);
+                int hi = (int) Math.min(Integer.MAX_VALUE, done + more);
+                sums.merge(run(pool, n, seed, false, done, hi));
+            }
+            return new PercolationStats(sums);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    // helper function that runs trials lo..hi-1 on pool; the split into tasks depends on the
+    // trials only, so that the sums are added in the same order for any number of threads
+    private static Sums run(ForkJoinPool pool, int n, long seed, boolean clusters, int lo,
+                            int hi) {
+        ThreadLocal<Worker> grid = ThreadLocal.withInitial(() -> new Worker(n, clusters));
+        int cutoff = Math.max(1, (hi - lo) / TASKS);
+        return pool.invoke(new Trials(n, seed, grid, cutoff, lo, hi));
+    }
+
+    // create helper class for the state a thread reuses across trials: the grid and the
+    // permutation of its sites, and the grid's cluster statistics (null if not tracked)
+    private static class Worker {
+
+        private final Percolation grid;
+        private final int[] sites;
+        private final ClusterStats clusters;
+
+        public Worker(int n, boolean clusters) {
+            grid = new Percolation(n);
+            sites = new int[n * n];
+            this.clusters = clusters ? grid.clusterStats() : null;
+        }
+    }
+
+    // create helper class for the running statistics of a range of trials: thresholds and,
+    // if tracked, largest cluster, clusters and spanning cluster at the threshold (per site)
+    private static class Sums {
+
+        private final RunningStats threshold = new RunningStats();
+        private final RunningStats largest = new RunningStats();
+        private final RunningStats clusters = new RunningStats();
+        private final RunningStats spanning = new RunningStats();
+
+        // helper function that adds the sums of that to this one
+        private Sums merge(Sums that) {
+            threshold.merge(that.threshold);
+            largest.merge(that.largest);
+            clusters.merge(that.clusters);
+            spanning.merge(that.spanning);
+            return this;
+        }
+    }
+
+    // create helper class for the task that runs trials lo..hi-1 and returns the running
+    // statistics of their thresholds
+    private static class Trials extends RecursiveTask<Sums> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int n;
+        private final long seed;
+        private final ThreadLocal<Worker> grid;
+        private final int cutoff, lo, hi;
+
+        public Trials(int n, long seed, ThreadLocal<Worker> grid, int cutoff, int lo,
+                      int hi) {
+            this.n = n;
+            this.seed = seed;
+            this.grid = grid;
+            this.cutoff = cutoff;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected Sums compute() {
+            if (hi - lo > cutoff) {
+                int mid = (lo + hi) >>> 1;
+                Trials left = new Trials(n, seed, grid, cutoff, lo, mid);
+                left.fork();
+                Sums right = new Trials(n, seed, grid, cutoff, mid, hi).compute();
+                return left.join().merge(right);
+            }
+            Sums sums = new Sums();
+            Worker w = grid.get();
+            double sites = (double) n * n;
+            for (int i = lo; i < hi; i++) {
+                w.grid.reset();
+                sums.threshold.add(trial(w, random(seed, i)));
+                if (w.clusters != null) {
+                    sums.largest.add(w.clusters.largest() / sites);
+                    sums.clusters.add(w.clusters.clusters() / sites);
+                    sums.spanning.add(w.clusters.spanningSize() / sites);
                 }
             }
-            num[i] = (double) test.numberOfOpenSites() / (n * n);
+            return sums;
         }
     }
 
+    // helper function that opens the sites of the blocked grid of w in random order until it
+    // percolates; returns the fraction of open sites. The sites still to be opened are
+    // sites[k..]; they start in row-major order so that the trial depends on random only
+    private static double trial(Worker w, SplittableRandom random) {
+        Percolation test = w.grid;
+        int[] sites = w.sites;
+        for (int i = 0; i < sites.length; i++) sites[i] = i;
+        for (int k = 0; !test.percolates(); k++) {
+            int j = k + random.nextInt(sites.length - k);
+            int site = sites[j];
+            sites[j] = sites[k];
+            sites[k] = site;
+            test.openSite(site);
+        }
+        return (double) test.numberOfOpenSites() / sites.length;
+    }
+
+    // random number generator of trial i for the given seed
+    static SplittableRandom random(long seed, int i) {
+        return new SplittableRandom(mix(seed + GAMMA * i));
+    }
+
+    // helper function that scrambles the bits of z (the finalizer of SplitMix64), so that
+    // neighbouring trial indices get unrelated seeds
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // number of trials performed
+    public int trials() {
+        return (int) sums.threshold.count();
+    }
+
     // sample mean of percolation threshold
     public double mean() {
-        return StdStats.mean(num);
+        return sums.threshold.mean();
     }
 
     // sample standard deviation of percolation threshold
     public double stddev() {
-        return StdStats.stddev(num);
+        return sums.threshold.stddev();
     }
 
     // low endpoint of 95% confidence interval
     public double confidenceLo() {
-        return (StdStats.mean(num) - 1.96 * StdStats.stddev(num) / Math.sqrt(Trials));
+        return sums.threshold.mean() - sums.threshold.halfWidth();
     }
 
     // high endpoint of 95% confidence interval
     public double confidenceHi() {
-        return (StdStats.mean(num) + 1.96 * StdStats.stddev(num) / Math.sqrt(Trials));
+        return sums.threshold.mean() + sums.threshold.halfWidth();
+    }
+
+    // mean size of the largest cluster at the threshold, as a fraction of all sites (NaN if
+    // clusters were not tracked)
+    public double largestCluster() {
+        return sums.largest.mean();
+    }
+
+    // mean number of clusters at the threshold, per site (NaN if clusters were not tracked)
+    public double clusterDensity() {
+        return sums.clusters.mean();
+    }
+
+    // mean size of the spanning cluster at the threshold, as a fraction of all sites (NaN if
+    // clusters were not tracked)
+    public double spanningCluster() {
+        return sums.spanning.mean();
     }
 
-    // test client
+    // helper function: is s an int (a number of trials rather than an epsilon)?
+    private static boolean isInteger(String s) {
+        try {
+            Integer.parseInt(s);
+            return true;
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // test client: n trials [seed [threads]], or n epsilon [seed [threads]] to run trials until
+    // the 95% confidence interval has at most half-width epsilon
     public static void main(String[] args) {
         int n = Integer.parseInt(args[0]);
-        int trials = Integer.parseInt(args[1]);
-        PercolationStats testrun = new PercolationStats(n, trials);
+        long seed = args.length > 2 ? Long.parseLong(args[2])
+                                    : StdRandom.uniformLong(Long.MAX_VALUE);
+        int threads = args.length > 3 ? Integer.parseInt(args[3])
+                                      : Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        PercolationStats testrun;
+        if (isInteger(args[1])) {
+            testrun = new PercolationStats(n, Integer.parseInt(args[1]), seed, threads, true);
+        }
+        else testrun = toPrecision(n, Double.parseDouble(args[1]), seed, threads);
+        double t = (System.nanoTime() - start) / 1e9;
         StdOut.printf("mean = %f%n", testrun.mean());
         StdOut.printf("stddev = %f%n", testrun.stddev());
-        StdOut.printf("95%% confidence interval = [%f, %f]", testrun.confidenceLo(),
+        StdOut.printf("95%% confidence interval = [%f, %f]%n", testrun.confidenceLo(),
                       testrun.confidenceHi());
+        if (!Double.isNaN(testrun.largestCluster())) {
+            StdOut.printf("at threshold: largest cluster %f, spanning cluster %f, "
+                                  + "clusters per site %f%n", testrun.largestCluster(),
+                          testrun.spanningCluster(), testrun.clusterDensity());
+        }
+        StdOut.printf("%d trials on %d threads: %.3fs, %.1f trials/s", testrun.trials(), threads,
+                      t, testrun.trials() / t);
     }
 
 }
@@ -0,0 +1,11 @@
+/* *****************************************************************************
+ *  Synopsis: supplies the rows of an n-by-n grid, top to bottom, to
+ *            StripedPercolation. A row is a bitset of (n + 63) / 64 longs in which
+ *            bit c (bit c % 64 of word c / 64) is set if the site in column c is open.
+ **************************************************************************** */
+
+public interface RowSource {
+
+    // fills row with the open sites of the next row
+    void next(long[] row);
+}
@@ -0,0 +1,57 @@
+/* *****************************************************************************
+ *  Synopsis: running mean and variance of a stream of values in constant memory
+ *            (Welford's update), with the merge of two accumulators by Chan et al.,
+ *            so that parallel tasks can keep their own and combine them on join.
+ **************************************************************************** */
+
+class RunningStats {
+
+    private long count;
+    private double mean;
+    private double m2;
+
+    // add value x
+    void add(double x) {
+        count++;
+        double d = x - mean;
+        mean += d / count;
+        m2 += d * (x - mean);
+    }
+
+    // add all values of that to this accumulator; returns this
+    RunningStats merge(RunningStats that) {
+        if (that.count == 0) return this;
+        if (count == 0) {
+            count = that.count;
+            mean = that.mean;
+            m2 = that.m2;
+            return this;
+        }
+        long c = count + that.count;
+        double d = that.mean - mean;
+        mean += d * that.count / c;
+        m2 += that.m2 + d * d * count * that.count / c;
+        count = c;
+        return this;
+    }
+
+    // number of values
+    long count() {
+        return count;
+    }
+
+    // sample mean; NaN if there are no values
+    double mean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    // sample standard deviation; NaN if there are less than two values
+    double stddev() {
+        return count < 2 ? Double.NaN : Math.sqrt(m2 / (count - 1));
+    }
+
+    // half-width of the 95% confidence interval of the mean
+    double halfWidth() {
+        return 1.96 * stddev() / Math.sqrt(count);
+    }
+}
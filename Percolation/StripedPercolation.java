@@ -0,0 +1,227 @@
+/* *****************************************************************************
+ *  Synopsis: decides whether an n-by-n grid percolates by streaming its rows from
+ *            top to bottom (Hoshen-Kopelman), for grids far too large to keep in
+ *            memory. Only the labels of the previous row are kept: the open sites of
+ *            the next row get labels n..2n-1 in a union-find of 2n labels and are
+ *            joined with their left and upper neighbours; then the clusters that
+ *            reach the new row are relabelled 0..k-1 and the rest is forgotten. Every
+ *            label carries a flag telling whether its cluster reaches the top row, so
+ *            the grid percolates if a site of the bottom row is flagged, and reading
+ *            stops early once no cluster of a row reaches the top.
+ *            Memory is O(n), and the rows are read sequentially from a RowSource:
+ *            a seeded generator or a memory-mapped bit file (see random(), mapped()
+ *            and write()).
+ *  Dependencies: -- GridUnionFind.java
+ *                -- Percolation.java
+ *                -- RowSource.java
+ **************************************************************************** */
+
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class StripedPercolation {
+
+    private static final byte TOP = 1;
+
+    private final int N;
+    private final boolean percolates;
+    private int rows;
+
+    // streams the n rows of an n-by-n grid from source and checks for percolation
+    public StripedPercolation(int n, RowSource source) {
+        if (n <= 0) throw new IllegalArgumentException("n must be greater than 0!");
+        if (source == null) throw new IllegalArgumentException("No row source provided!");
+        N = n;
+
+        long[] row = new long[words(n)];
+        int[] prev = new int[n];
+        int[] cur = new int[n];
+        int[] remap = new int[2 * n];
+        byte[] flags = new byte[2 * n];
+        byte[] next = new byte[n];
+        GridUnionFind id = new GridUnionFind(2 * n);
+        Arrays.fill(prev, -1);
+        Arrays.fill(remap, -1);
+
+        boolean top = true;
+        while (top && rows < n) {
+            source.next(row);
+            id.reset();
+            for (int c = 0; c < n; c++) {
+                if ((row[c >>> 6] & 1L << c) == 0) continue;
+                int label = n + c;
+                flags[label] = rows == 0 ? TOP : 0;
+                if (c > 0 && (row[(c - 1) >>> 6] & 1L << (c - 1)) != 0) {
+                    label = union(id, flags, label, n + c - 1);
+                }
+                if (prev[c] >= 0) union(id, flags, label, prev[c]);
+            }
+
+            // relabel the clusters of this row 0..k-1, keeping their flags
+            int k = 0;
+            top = false;
+            for (int c = 0; c < n; c++) {
+                if ((row[c >>> 6] & 1L << c) == 0) {
+                    cur[c] = -1;
+                    continue;
+                }
+                int root = id.find(n + c);
+                if (remap[root] < 0) {
+                    remap[root] = k;
+                    next[k++] = flags[root];
+                }
+                cur[c] = remap[root];
+                top |= (flags[root] & TOP) != 0;
+            }
+            for (int c = 0; c < n; c++) {
+                if (cur[c] >= 0) remap[id.find(n + c)] = -1;
+            }
+            System.arraycopy(next, 0, flags, 0, k);
+            int[] t = prev;
+            prev = cur;
+            cur = t;
+            rows++;
+        }
+        percolates = top && rows == n;
+    }
+
+    // helper function that merges the clusters with labels p and q, or-ing their flags;
+    // returns the root of the merged cluster
+    private static int union(GridUnionFind id, byte[] flags, int p, int q) {
+        byte f = (byte) (flags[id.find(p)] | flags[id.find(q)]);
+        int root = id.union(p, q);
+        flags[root] = f;
+        return root;
+    }
+
+    // helper function that returns the number of longs of a row of n sites
+    private static int words(int n) {
+        return (n + 63) >>> 6;
+    }
+
+    // does the grid percolate?
+    public boolean percolates() {
+        return percolates;
+    }
+
+    // number of rows read (less than n if no cluster reached further down from the top)
+    public int rowsRead() {
+        return rows;
+    }
+
+    // grid dimension n
+    public int dimension() {
+        return N;
+    }
+
+    // rows of an n-by-n grid whose sites are open independently with probability p, the same
+    // for a given seed
+    public static RowSource random(int n, double p, long seed) {
+        if (n <= 0) throw new IllegalArgumentException("n must be greater than 0!");
+        if (!(p >= 0.0 && p <= 1.0)) throw new IllegalArgumentException("p must be in [0, 1]!");
+        SplittableRandom random = new SplittableRandom(seed);
+        return row -> {
+            Arrays.fill(row, 0L);
+            for (int c = 0; c < n; c++) {
+                if (random.nextDouble() < p) row[c >>> 6] |= 1L << c;
+            }
+        };
+    }
+
+    // rows of an n-by-n grid read from a file written by write(); the file is memory-mapped a
+    // window of rows at a time
+    public static RowSource mapped(String filename, int n) {
+        if (n <= 0) throw new IllegalArgumentException("n must be greater than 0!");
+        int words = words(n);
+        long window = Math.max(1, (Integer.MAX_VALUE / 8) / words);
+        return new RowSource() {
+            private LongBuffer buffer = LongBuffer.allocate(0);
+            private long row;
+
+            public void next(long[] bits) {
+                if (!buffer.hasRemaining()) {
+                    long count = Math.min(window, n - row);
+                    if (count <= 0) throw new IllegalStateException("No rows left in file!");
+                    try (RandomAccessFile file = new RandomAccessFile(filename, "r");
+                         FileChannel channel = file.getChannel()) {
+                        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 8 * row * words,
+                                             8 * count * words).asLongBuffer();
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                buffer.get(bits, 0, words);
+                row++;
+            }
+        };
+    }
+
+    // write the n rows of an n-by-n grid from source to a file that mapped() can read
+    public static void write(String filename, int n, RowSource source) {
+        long[] row = new long[words(n)];
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+            for (int r = 0; r < n; r++) {
+                source.next(row);
+                for (long w : row) out.writeLong(w);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // test client: n p [seed [filename]]; checks against Percolation for small grids and
+    // streams a large grid from the generator (or through the file, if given)
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        double p = Double.parseDouble(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0L;
+
+        for (int m = 1; m <= 64; m++) {
+            for (int i = 0; i < 20; i++) {
+                double q = 0.45 + 0.3 * i / 19;
+                RowSource rows = random(m, q, seed + i);
+                Percolation grid = new Percolation(m);
+                long[] row = new long[words(m)];
+                for (int r = 0; r < m; r++) {
+                    rows.next(row);
+                    for (int c = 0; c < m; c++) {
+                        if ((row[c >>> 6] & 1L << c) != 0) grid.open(r + 1, c + 1);
+                    }
+                }
+                boolean striped = new StripedPercolation(m, random(m, q, seed + i)).percolates();
+                if (striped != grid.percolates()) {
+                    throw new IllegalStateException("Wrong result for n = " + m + "!");
+                }
+            }
+        }
+        StdOut.println("Agrees with Percolation for n = 1..64");
+
+        RowSource source = random(n, p, seed);
+        if (args.length > 3) {
+            Stopwatch sw = new Stopwatch();
+            write(args[3], n, source);
+            StdOut.printf("Written in %.3fs%n", sw.elapsedTime());
+            source = mapped(args[3], n);
+        }
+        Stopwatch sw = new Stopwatch();
+        StripedPercolation test = new StripedPercolation(n, source);
+        StdOut.printf("n = %d, p = %.4f: %s after %d rows (%.3fs)%n", n, p,
+                      test.percolates() ? "percolates" : "does not percolate", test.rowsRead(),
+                      sw.elapsedTime());
+    }
+
+}